@@ -0,0 +1,105 @@
+package com.example.tasterj.config;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Declares the indexes the product queries rely on and reconciles them with what exists in
+// products_collection. Runs before ApplicationReadyEvent, so the startup sync already writes through them.
+@Component
+public class ProductIndexInitializer {
+
+    // ean + store.code is both the lookup key of the recipe prices and the ingest upsert filter.
+    // current_price is last so the "price at least 1 kr" filter is answered from the index.
+    public static final List<IndexModel> PRODUCT_INDEXES = List.of(
+            new IndexModel(Indexes.ascending("ean", "store.code", "current_price"), new IndexOptions().name("ean_store_price")),
+            new IndexModel(Indexes.ascending("store.code", "current_price"), new IndexOptions().name("store_code_price")),
+            new IndexModel(Indexes.ascending("brand"), new IndexOptions().name("brand")),
+            // Unanchored regex searches still scan these, but only the keys instead of whole documents
+            new IndexModel(Indexes.ascending("name"), new IndexOptions().name("name")),
+            new IndexModel(Indexes.ascending("category.name"), new IndexOptions().name("category_name")),
+            new IndexModel(Indexes.ascending("store.name"), new IndexOptions().name("store_name")));
+
+    private final MongoCollection<Document> collection;
+
+    public ProductIndexInitializer(MongoClient mongoClient, @Value("${mongodb.database}") String databaseName) {
+        this.collection = mongoClient.getDatabase(databaseName).getCollection("products_collection");
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void onStartup() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            System.err.println("Could not reconcile indexes on products_collection: " + e.getMessage());
+        }
+    }
+
+    // Creates missing indexes and rebuilds ones whose definition changed under the same name.
+    // Indexes not declared here (e.g. _id_ or the temporary legacy_id index of the id migration) are left alone.
+    public void reconcile() {
+        Map<String, Document> existingByName = new HashMap<>();
+        Map<String, String> existingByKey = new HashMap<>();
+        for (Document index : collection.listIndexes()) {
+            existingByName.put(index.getString("name"), index);
+            existingByKey.put(keySignature(index.get("key", Document.class)), index.getString("name"));
+        }
+
+        List<IndexModel> missing = new ArrayList<>();
+        for (IndexModel model : PRODUCT_INDEXES) {
+            String name = model.getOptions().getName();
+            String key = keySignature(model.getKeys());
+            Document existing = existingByName.get(name);
+
+            if (existing != null) {
+                if (keySignature(existing.get("key", Document.class)).equals(key)) {
+                    continue;
+                }
+                System.out.println("Index " + name + " on products_collection changed, rebuilding it.");
+                collection.dropIndex(name);
+                missing.add(model);
+            } else if (existingByKey.containsKey(key)) {
+                // Same keys under another name; creating it again would fail with IndexOptionsConflict
+                System.out.println("Index " + name + " already exists on products_collection as " + existingByKey.get(key) + ".");
+            } else {
+                missing.add(model);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            long startNanos = System.nanoTime();
+            List<String> created = collection.createIndexes(missing);
+            System.out.printf("Created indexes %s on products_collection in %d ms.%n",
+                    created, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+    }
+
+    // Field order and direction, e.g. "ean:1,store.code:1". Indexes created from the shell store the
+    // direction as a double, so numbers are normalised before comparing.
+    private String keySignature(Bson keys) {
+        BsonDocument document = keys.toBsonDocument(BsonDocument.class, collection.getCodecRegistry());
+        StringBuilder signature = new StringBuilder();
+        document.forEach((field, value) -> {
+            if (signature.length() > 0) {
+                signature.append(',');
+            }
+            signature.append(field).append(':')
+                    .append(value.isNumber() ? String.valueOf(value.asNumber().intValue()) : value.asString().getValue());
+        });
+        return signature.toString();
+    }
+}
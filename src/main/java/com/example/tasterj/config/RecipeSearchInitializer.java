@@ -0,0 +1,88 @@
+package com.example.tasterj.config;
+
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Maintains recipes.search_vector, the full-text document recipe search matches against: the name, the tags
+// and the description, weighted in that order and stemmed with the Norwegian configuration. Triggers keep
+// it current on every write to recipes or recipe_tags, and a GIN index serves the searches. Hibernate's
+// schema update creates the tables before this runs and leaves the column alone, since it is not mapped.
+@Component
+public class RecipeSearchInitializer {
+
+    private static final List<String> STATEMENTS = List.of(
+            "ALTER TABLE recipes ADD COLUMN IF NOT EXISTS search_vector tsvector",
+
+            // Parameters are prefixed, since in SQL functions a column of the same name would win
+            """
+            CREATE OR REPLACE FUNCTION recipe_search_vector(p_recipe_id varchar, p_name text, p_description text)
+            RETURNS tsvector LANGUAGE sql STABLE AS $$
+                SELECT setweight(to_tsvector('norwegian', coalesce(p_name, '')), 'A')
+                    || setweight(to_tsvector('norwegian', coalesce(
+                           (SELECT string_agg(t.tag, ' ') FROM recipe_tags t WHERE t.recipe_id = p_recipe_id), '')), 'B')
+                    || setweight(to_tsvector('norwegian', coalesce(p_description, '')), 'C')
+            $$
+            """,
+
+            """
+            CREATE OR REPLACE FUNCTION recipes_search_vector_update() RETURNS trigger LANGUAGE plpgsql AS $$
+            BEGIN
+                NEW.search_vector := recipe_search_vector(NEW.id, NEW.name, NEW.description);
+                RETURN NEW;
+            END
+            $$
+            """,
+            "DROP TRIGGER IF EXISTS recipes_search_vector ON recipes",
+            "CREATE TRIGGER recipes_search_vector BEFORE INSERT OR UPDATE OF name, description ON recipes "
+                    + "FOR EACH ROW EXECUTE FUNCTION recipes_search_vector_update()",
+
+            // Tags are written after their recipe, so the recipe's document is rebuilt on every tag change
+            """
+            CREATE OR REPLACE FUNCTION recipe_tags_search_vector_update() RETURNS trigger LANGUAGE plpgsql AS $$
+            BEGIN
+                UPDATE recipes SET search_vector = recipe_search_vector(id, name, description)
+                 WHERE id = CASE WHEN TG_OP = 'DELETE' THEN OLD.recipe_id ELSE NEW.recipe_id END;
+                RETURN NULL;
+            END
+            $$
+            """,
+            "DROP TRIGGER IF EXISTS recipe_tags_search_vector ON recipe_tags",
+            "CREATE TRIGGER recipe_tags_search_vector AFTER INSERT OR UPDATE OR DELETE ON recipe_tags "
+                    + "FOR EACH ROW EXECUTE FUNCTION recipe_tags_search_vector_update()",
+
+            "CREATE INDEX IF NOT EXISTS idx_recipes_search_vector ON recipes USING GIN (search_vector)");
+
+    // Recipes written before the triggers existed
+    private static final String BACKFILL =
+            "UPDATE recipes SET search_vector = recipe_search_vector(id, name, description) WHERE search_vector IS NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RecipeSearchInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void onStartup() {
+        try {
+            initialize();
+        } catch (Exception e) {
+            System.err.println("Could not set up full-text search on recipes: " + e.getMessage());
+        }
+    }
+
+    // Idempotent, so it simply runs on every startup
+    public void initialize() {
+        long startNanos = System.nanoTime();
+        for (String statement : STATEMENTS) {
+            jdbcTemplate.execute(statement);
+        }
+        int backfilled = jdbcTemplate.update(BACKFILL);
+        System.out.printf("Full-text search on recipes set up, %d recipes backfilled, in %d ms.%n",
+                backfilled, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+}
@@ -1,12 +1,21 @@
 package com.example.tasterj.controller;
 
 
+import com.example.tasterj.dto.PriceHistoryDto;
+import com.example.tasterj.repository.ProductPriceHistoryRepository;
+import com.example.tasterj.service.ProductSearchResults;
 import com.example.tasterj.service.ProductService;
+import com.example.tasterj.service.SearchCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -15,14 +24,20 @@ import java.util.Map;
 public class ProductController {
 
     private static final int QUERY_CHAR_LIMIT = 50;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int PRICE_HISTORY_DEFAULT_DAYS = 90;
+    private static final int PRICE_HISTORY_MAX_DAYS = 3 * 365;
+    private static final List<String> PRICE_HISTORY_INTERVALS = List.of("day", "week", "month");
 
     @Autowired
     private ProductService productService;
 
 
+    // Written to the response as the matched products are read, instead of mapped and serialised as a whole
     @PostMapping("/match")
-    public Map<String, List<Map<String, Object>>> getMatchedProducts(@RequestBody List<Map<String, String>> ingredients) {
-        return productService.findMatches(ingredients);
+    public ResponseEntity<StreamingResponseBody> getMatchedProducts(@RequestBody List<Map<String, String>> ingredients) {
+        StreamingResponseBody body = out -> productService.findMatches(ingredients, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
     @GetMapping("/search")
@@ -30,21 +45,70 @@ public class ProductController {
             @RequestParam String query,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "12") int pageSize,
-            @RequestParam(required = false) List<String> selectedStores) {
+            @RequestParam(required = false) List<String> selectedStores,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "true") boolean includeCount) throws IOException {
 
         if (query.length() > QUERY_CHAR_LIMIT) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body("Search query exceeds character limit of " + QUERY_CHAR_LIMIT + " characters.");
         }
 
-        Map<String, Object> searchResult = productService.searchProducts(query, selectedStores, page, pageSize);
+        // Checked before the search, since its errors would only surface once the 200 is already sent
+        if (page < 1 || pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Page must be at least 1 and page size between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        // The search skips (page - 1) * pageSize products, which has to fit in an int
+        if ((long) (page - 1) * pageSize > Integer.MAX_VALUE) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Page " + page + " is out of range.");
+        }
+
+        // The nextCursor of a previous response; takes precedence over page
+        SearchCursor after = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                after = SearchCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+        }
 
-        if (((List<?>) searchResult.get("products")).isEmpty()) {
+        ProductSearchResults searchResult = productService.searchProducts(query, selectedStores, page, pageSize, after, includeCount);
+
+        if (searchResult.isEmpty()) {
+            searchResult.close();
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No products found for the given query.");
         }
 
-        return ResponseEntity.ok(searchResult);
+        // The products are written from the Mongo cursor as they arrive
+        StreamingResponseBody body = searchResult::writeTo;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
-}
+    @GetMapping("/{ean}/price-history")
+    public ResponseEntity<?> getPriceHistory(
+            @PathVariable String ean,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String interval,
+            @RequestParam(required = false) List<String> stores) {
 
+        LocalDate end = to != null ? to : LocalDate.now(ProductPriceHistoryRepository.ZONE);
+        LocalDate start = from != null ? from : end.minusDays(PRICE_HISTORY_DEFAULT_DAYS);
+
+        if (!PRICE_HISTORY_INTERVALS.contains(interval)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Interval must be one of " + PRICE_HISTORY_INTERVALS + ".");
+        }
+
+        if (start.isAfter(end) || start.isBefore(end.minusDays(PRICE_HISTORY_MAX_DAYS))) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Price history range must be between 0 and " + PRICE_HISTORY_MAX_DAYS + " days.");
+        }
+
+        PriceHistoryDto priceHistory = productService.getPriceHistory(ean, stores, start, end, interval);
+        return ResponseEntity.ok(priceHistory);
+    }
+
+}
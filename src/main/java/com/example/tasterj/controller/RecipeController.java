@@ -1,10 +1,11 @@
 package com.example.tasterj.controller;
 
 import com.example.tasterj.dto.CreateRecipeDto;
-import com.example.tasterj.dto.RecipeWithProductInfo;
+import com.example.tasterj.dto.CursorSlice;
 import com.example.tasterj.dto.UpdateRecipeDto;
 import com.example.tasterj.model.Recipe;
 import com.example.tasterj.model.User;
+import com.example.tasterj.service.RecipeDetailCache;
 import com.example.tasterj.service.RecipeService;
 import com.example.tasterj.service.ImageService;
 import com.example.tasterj.service.UserService;
@@ -13,7 +14,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -63,6 +66,25 @@ public class RecipeController {
         return new ResponseEntity<>(userRecipes, HttpStatus.OK);
     }
 
+    // Infinite-scroll variant: no count and no offset, pass nextCursor back for the next slice
+    @GetMapping("/user-recipes/scroll")
+    public ResponseEntity<?> scrollUserRecipes(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (!(authentication instanceof JwtAuthenticationToken)) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        String userId = ((JwtAuthenticationToken) authentication).getTokenAttributes().get("sub").toString();
+
+        try {
+            return new ResponseEntity<>(recipeService.scrollUserRecipes(userId, cursor, size), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
     @GetMapping
     public ResponseEntity<Page<Recipe>> getRecipes(@RequestParam(defaultValue = "0") int page,
                                                    @RequestParam(defaultValue = "10") int size) {
@@ -71,12 +93,29 @@ public class RecipeController {
         return new ResponseEntity<>(recipes, HttpStatus.OK);
     }
 
-    @GetMapping("/{id}")
-    public ResponseEntity<RecipeWithProductInfo> getRecipeById(@PathVariable String id,
-                                                               @RequestParam(defaultValue = "false") boolean includeProductInfo) {
+    // Newest first, as slices
+    @GetMapping("/scroll")
+    public ResponseEntity<?> scrollRecipes(@RequestParam(required = false) String cursor,
+                                           @RequestParam(defaultValue = "10") int size) {
+        try {
+            return new ResponseEntity<>(recipeService.scrollRecipes(cursor, size), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
 
-        RecipeWithProductInfo recipeWithProductInfo = recipeService.getRecipeById(id, includeProductInfo);
-        return new ResponseEntity<>(recipeWithProductInfo, HttpStatus.OK);
+    @GetMapping("/{id}")
+    public ResponseEntity<byte[]> getRecipeById(@PathVariable String id,
+                                                @RequestParam(defaultValue = "false") boolean includeProductInfo) {
+
+        RecipeDetailCache.Detail detail = recipeService.getRecipeDetail(id, includeProductInfo);
+        // Spring answers 304 without the body when If-None-Match carries this ETag. no-cache lets clients
+        // and proxies keep the response but revalidate it on every use.
+        return ResponseEntity.ok()
+                .eTag(detail.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(detail.getJson());
     }
 
 
@@ -176,6 +215,18 @@ public class RecipeController {
         return new ResponseEntity<>(savedRecipes, HttpStatus.OK);
     }
 
+    // Saved recipes as slices, most recently saved first
+    @GetMapping("/save/list/scroll")
+    public ResponseEntity<?> scrollSavedRecipes(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return new ResponseEntity<>(recipeService.scrollSavedRecipesForUser(cursor, size), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
     // Check if a recipe is saved
     @GetMapping("/save/is-saved")
     public boolean isRecipeSaved(@RequestParam String recipeId) {
@@ -197,5 +248,24 @@ public class RecipeController {
         Page<Recipe> recipes = recipeService.searchRecipes(query, minPrice, maxPrice, sortBy, sortDirection, pageable, isPublic);
         return new ResponseEntity<>(recipes, HttpStatus.OK);
     }
-    
+
+    // Search results as slices; sorted by price or date, since relevance has no key to seek on
+    @GetMapping("/search/scroll")
+    public ResponseEntity<?> scrollSearchRecipes(
+            @RequestParam(required = false, defaultValue = "") String query,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "0") double minPrice,
+            @RequestParam(defaultValue = "10000") double maxPrice,
+            @RequestParam(defaultValue = "date") String sortBy,
+            @RequestParam(defaultValue = "asc") String sortDirection,
+            @RequestParam(required = false, defaultValue = "true") Boolean isPublic) {
+        try {
+            CursorSlice<Recipe> recipes = recipeService.scrollSearchRecipes(query, minPrice, maxPrice, sortBy, sortDirection,
+                    isPublic, cursor, size);
+            return new ResponseEntity<>(recipes, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
 }
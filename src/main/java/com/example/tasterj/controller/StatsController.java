@@ -0,0 +1,71 @@
+package com.example.tasterj.controller;
+
+import com.example.tasterj.service.ProductLookupCache;
+import com.example.tasterj.service.ProductSearchIndex;
+import com.example.tasterj.service.ProductSearchResultCache;
+import com.example.tasterj.service.RecipeDetailCache;
+import com.example.tasterj.service.RecipePriceRefresher;
+import com.example.tasterj.service.RecipeVoteCountReconciler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/stats")
+public class StatsController {
+
+    @Autowired
+    private ProductLookupCache productLookupCache;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private ProductSearchResultCache productSearchResultCache;
+
+    @Autowired
+    private RecipePriceRefresher recipePriceRefresher;
+
+    @Autowired
+    private RecipeDetailCache recipeDetailCache;
+
+    @Autowired
+    private RecipeVoteCountReconciler recipeVoteCountReconciler;
+
+    // Hit, miss and eviction counts of the product lookup cache, for sizing product.cache.max-size
+    @GetMapping("/product-cache")
+    public ProductLookupCache.Stats getProductCacheStats() {
+        return productLookupCache.getStats();
+    }
+
+    // Size, generation and build time of the in-memory product search index
+    @GetMapping("/search-index")
+    public ProductSearchIndex.Stats getSearchIndexStats() {
+        return productSearchIndex.getStats();
+    }
+
+    // Hit rates of the search result cache, overall and for the most requested searches
+    @GetMapping("/search-cache")
+    public ProductSearchResultCache.Stats getSearchCacheStats() {
+        return productSearchResultCache.getStats();
+    }
+
+    // Recipes refreshed and time taken by the last recipe price refresh; empty before the first one
+    @GetMapping("/recipe-prices")
+    public RecipePriceRefresher.Stats getRecipePriceStats() {
+        return recipePriceRefresher.getLastRun();
+    }
+
+    // Hit rate and memory use of the recipe detail cache, for sizing recipe.cache.max-bytes
+    @GetMapping("/recipe-cache")
+    public RecipeDetailCache.Stats getRecipeCacheStats() {
+        return recipeDetailCache.getStats();
+    }
+
+    // Recipes whose vote counts the last reconciliation had to correct; empty before the first one
+    @GetMapping("/vote-counts")
+    public RecipeVoteCountReconciler.Stats getVoteCountStats() {
+        return recipeVoteCountReconciler.getLastRun();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.tasterj.dto;
+
+import lombok.Getter;
+
+import java.util.List;
+
+// One slice of an infinite-scroll listing: no total and no page number, just the items and the cursor
+// to pass back for the next slice (null on the last one)
+@Getter
+public class CursorSlice<T> {
+    private final List<T> content;
+    private final int size;
+    private final boolean hasNext;
+    private final String nextCursor;
+
+    public CursorSlice(List<T> content, int size, String nextCursor) {
+        this.content = content;
+        this.size = size;
+        this.hasNext = nextCursor != null;
+        this.nextCursor = nextCursor;
+    }
+}
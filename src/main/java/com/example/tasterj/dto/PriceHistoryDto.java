@@ -0,0 +1,34 @@
+package com.example.tasterj.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Getter
+@Setter
+public class PriceHistoryDto {
+
+    private String ean;
+    private LocalDate from;
+    private LocalDate to;
+    private String interval;
+    private List<StoreSeries> stores;
+
+    @Getter
+    @Setter
+    public static class StoreSeries {
+        private String storeCode;
+        private List<PricePoint> points;
+    }
+
+    @Getter
+    @Setter
+    public static class PricePoint {
+        private LocalDate date;
+        private double min;
+        private double avg;
+        private double max;
+    }
+}
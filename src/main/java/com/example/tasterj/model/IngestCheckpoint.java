@@ -0,0 +1,30 @@
+package com.example.tasterj.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+public class IngestCheckpoint {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+
+    private String id;
+    private String runId;
+    private String status;
+
+    // Highest page such that it and every page before it has been written
+    private int lastPage;
+
+    private Instant startedAt;
+    private Instant updatedAt;
+    private Instant completedAt;
+
+    private long newProducts;
+    private long changedProducts;
+    private long unchangedProducts;
+    private long removedProducts;
+}
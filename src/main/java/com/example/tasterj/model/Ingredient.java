@@ -12,7 +12,8 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
-@Table(name = "ingredients")
+// Indexed on the product, to find the recipes using a product whose price changed
+@Table(name = "ingredients", indexes = @Index(name = "idx_ingredients_ean_store_code", columnList = "ean, store_code"))
 public class Ingredient {
 
     @Id
@@ -40,7 +41,7 @@ public class Ingredient {
     @Column(nullable = true, length = 63)
     private String ean;
 
-    @Column(nullable = true, length = 63)
+    @Column(name = "store_code", nullable = true, length = 63)
     private String storeCode;
 
     public Ingredient() {
@@ -0,0 +1,17 @@
+package com.example.tasterj.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+// A product is one EAN as sold by one store
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class ProductKey {
+
+    private final String ean;
+    private final String storeCode;
+}
@@ -14,7 +14,12 @@ import java.util.List;
 @Getter
 @Setter
 @Entity
-@Table(name = "recipes")
+// Keyset scrolling seeks on (sort column, id)
+@Table(name = "recipes", indexes = {
+        @Index(name = "idx_recipes_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_recipes_stored_price_id", columnList = "stored_price, id"),
+        @Index(name = "idx_recipes_user_id_created_at_id", columnList = "user_id, created_at, id")
+})
 public class Recipe {
 
     @Id
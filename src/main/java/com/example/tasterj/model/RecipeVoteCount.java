@@ -0,0 +1,35 @@
+package com.example.tasterj.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+// A recipe's votes, counted as they are cast, so reading them is a primary key lookup instead of two
+// counts over votes. Written only through RecipeVoteCountRepository's atomic increments.
+@Getter
+@Setter
+@Entity
+@Table(name = "recipe_vote_counts")
+public class RecipeVoteCount {
+
+    @Id
+    @Column(name = "recipe_id", updatable = false, nullable = false)
+    private String recipeId;
+
+    // Deleting the recipe deletes its counts in the database
+    @OneToOne(fetch = FetchType.LAZY)
+    @MapsId
+    @JoinColumn(name = "recipe_id")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JsonIgnore
+    private Recipe recipe;
+
+    @Column(nullable = false)
+    private int upvotes;
+
+    @Column(nullable = false)
+    private int downvotes;
+}
@@ -13,7 +13,7 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
-@Table(name = "saved_recipes")
+@Table(name = "saved_recipes", indexes = @Index(name = "idx_saved_recipes_user_id_saved_at_id", columnList = "user_id, saved_at, id"))
 public class SavedRecipe {
 
     @Id
@@ -10,7 +10,8 @@ import java.time.LocalDateTime;
 @Getter
 @Setter
 @Entity
-@Table(name = "votes")
+// A user's vote on a recipe is looked up on every vote and every read, and counted per recipe on reconciliation
+@Table(name = "votes", indexes = @Index(name = "idx_votes_recipe_id_user_id", columnList = "recipe_id, user_id"))
 public class Vote {
 
     @Id
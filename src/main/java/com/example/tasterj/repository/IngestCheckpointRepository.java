@@ -0,0 +1,82 @@
+package com.example.tasterj.repository;
+
+import com.example.tasterj.model.IngestCheckpoint;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.ReplaceOptions;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Optional;
+
+import static com.mongodb.client.model.Filters.eq;
+
+@Repository
+public class IngestCheckpointRepository {
+
+    private final MongoCollection<Document> collection;
+
+    @Autowired
+    public IngestCheckpointRepository(MongoClient mongoClient, @Value("${mongodb.database}") String databaseName) {
+        this.collection = mongoClient.getDatabase(databaseName).getCollection("ingest_checkpoints");
+    }
+
+    // Find the checkpoint of a sync job by its name
+    public Optional<IngestCheckpoint> findById(String id) {
+        Document document = collection.find(eq("_id", id)).first();
+        return Optional.ofNullable(document).map(this::documentToCheckpoint);
+    }
+
+    // Insert or replace the checkpoint
+    public void save(IngestCheckpoint checkpoint) {
+        checkpoint.setUpdatedAt(Instant.now());
+        collection.replaceOne(eq("_id", checkpoint.getId()), checkpointToDocument(checkpoint), new ReplaceOptions().upsert(true));
+    }
+
+    private Document checkpointToDocument(IngestCheckpoint checkpoint) {
+        return new Document("_id", checkpoint.getId())
+                .append("run_id", checkpoint.getRunId())
+                .append("status", checkpoint.getStatus())
+                .append("last_page", checkpoint.getLastPage())
+                .append("started_at", toDate(checkpoint.getStartedAt()))
+                .append("updated_at", toDate(checkpoint.getUpdatedAt()))
+                .append("completed_at", toDate(checkpoint.getCompletedAt()))
+                .append("new_products", checkpoint.getNewProducts())
+                .append("changed_products", checkpoint.getChangedProducts())
+                .append("unchanged_products", checkpoint.getUnchangedProducts())
+                .append("removed_products", checkpoint.getRemovedProducts());
+    }
+
+    private IngestCheckpoint documentToCheckpoint(Document document) {
+        IngestCheckpoint checkpoint = new IngestCheckpoint();
+        checkpoint.setId(document.getString("_id"));
+        checkpoint.setRunId(document.getString("run_id"));
+        checkpoint.setStatus(document.getString("status"));
+        checkpoint.setLastPage(document.getInteger("last_page", 0));
+        checkpoint.setStartedAt(toInstant(document.getDate("started_at")));
+        checkpoint.setUpdatedAt(toInstant(document.getDate("updated_at")));
+        checkpoint.setCompletedAt(toInstant(document.getDate("completed_at")));
+        checkpoint.setNewProducts(getLong(document, "new_products"));
+        checkpoint.setChangedProducts(getLong(document, "changed_products"));
+        checkpoint.setUnchangedProducts(getLong(document, "unchanged_products"));
+        checkpoint.setRemovedProducts(getLong(document, "removed_products"));
+        return checkpoint;
+    }
+
+    private long getLong(Document document, String key) {
+        Number value = document.get(key, Number.class);
+        return value != null ? value.longValue() : 0L;
+    }
+
+    private Date toDate(Instant instant) {
+        return instant != null ? Date.from(instant) : null;
+    }
+
+    private Instant toInstant(Date date) {
+        return date != null ? date.toInstant() : null;
+    }
+}
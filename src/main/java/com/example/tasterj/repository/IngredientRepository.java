@@ -3,13 +3,33 @@ package com.example.tasterj.repository;
 
 import com.example.tasterj.model.Ingredient;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface IngredientRepository extends JpaRepository<Ingredient, String> {
 
     List<Ingredient> findByRecipeId(String recipeId);
+
+    // The products of many recipes' ingredients at once, without loading the ingredients
+    @Query("SELECT i.recipe.id AS recipeId, i.ean AS ean, i.storeCode AS storeCode FROM Ingredient i WHERE i.recipe.id IN :recipeIds")
+    List<ProductView> findProductsByRecipeIds(@Param("recipeIds") Collection<String> recipeIds);
+
+    // The ingredients using any of the EANs, through idx_ingredients_ean_store_code; callers match the store
+    @Query("SELECT i.recipe.id AS recipeId, i.ean AS ean, i.storeCode AS storeCode FROM Ingredient i WHERE i.ean IN :eans")
+    List<ProductView> findProductsByEans(@Param("eans") Collection<String> eans);
+
+    interface ProductView {
+
+        String getRecipeId();
+
+        String getEan();
+
+        String getStoreCode();
+    }
 }
 
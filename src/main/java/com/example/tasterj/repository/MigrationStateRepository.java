@@ -0,0 +1,69 @@
+package com.example.tasterj.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+
+import static com.mongodb.client.model.Filters.*;
+
+@Repository
+public class MigrationStateRepository {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+
+    private final MongoCollection<Document> collection;
+
+    @Autowired
+    public MigrationStateRepository(MongoClient mongoClient, @Value("${mongodb.database}") String databaseName) {
+        this.collection = mongoClient.getDatabase(databaseName).getCollection("migrations");
+    }
+
+    // Check whether a migration has been recorded as completed
+    public boolean isCompleted(String migrationId) {
+        return collection.find(and(eq("_id", migrationId), eq("status", COMPLETED))).first() != null;
+    }
+
+    // Get the number of documents an earlier, interrupted attempt already migrated
+    public long getMigratedCount(String migrationId) {
+        Document document = collection.find(eq("_id", migrationId)).first();
+        Number migrated = document != null ? document.get("migrated", Number.class) : null;
+        return migrated != null ? migrated.longValue() : 0L;
+    }
+
+    // Record progress after a batch, creating the state document on the first call
+    public void recordProgress(String migrationId, long migrated, long batches, double docsPerSecond) {
+        Date now = new Date();
+        collection.updateOne(eq("_id", migrationId),
+                Updates.combine(
+                        Updates.set("status", RUNNING),
+                        Updates.set("migrated", migrated),
+                        Updates.set("batches", batches),
+                        Updates.set("docs_per_second", docsPerSecond),
+                        Updates.set("updated_at", now),
+                        Updates.setOnInsert("started_at", now)),
+                new UpdateOptions().upsert(true));
+    }
+
+    // Mark a migration as completed so it is skipped from now on
+    public void markCompleted(String migrationId, long migrated, long batches, double docsPerSecond) {
+        Date now = new Date();
+        collection.updateOne(eq("_id", migrationId),
+                Updates.combine(
+                        Updates.set("status", COMPLETED),
+                        Updates.set("migrated", migrated),
+                        Updates.set("batches", batches),
+                        Updates.set("docs_per_second", docsPerSecond),
+                        Updates.set("updated_at", now),
+                        Updates.set("completed_at", now),
+                        Updates.setOnInsert("started_at", now)),
+                new UpdateOptions().upsert(true));
+    }
+}
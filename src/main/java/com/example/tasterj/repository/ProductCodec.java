@@ -0,0 +1,210 @@
+package com.example.tasterj.repository;
+
+import com.example.tasterj.model.Product;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Decodes products straight from the BSON stream, without building the intermediate Document that
+// documentToProduct reads from. Fields missing from the document (or left out by a projection) get the
+// same defaults documentToProduct gives them; fields the model does not have are skipped unread.
+public class ProductCodec implements Codec<Product> {
+
+    @Override
+    public Product decode(BsonReader reader, DecoderContext decoderContext) {
+        Product product = new Product();
+        product.setBrand("");
+        product.setVendor("");
+        product.setUrl("");
+        product.setImage("");
+        product.setDescription("");
+        product.setWeightUnit("");
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.readName()) {
+                case "_id" -> product.setId(readId(reader));
+                case "ean" -> product.setEan(readString(reader, null));
+                case "name" -> product.setName(readString(reader, null));
+                case "brand" -> product.setBrand(readString(reader, ""));
+                case "vendor" -> product.setVendor(readString(reader, ""));
+                case "url" -> product.setUrl(readString(reader, ""));
+                case "image" -> product.setImage(readString(reader, ""));
+                case "description" -> product.setDescription(readString(reader, ""));
+                case "current_price" -> product.setCurrentPrice(readDouble(reader));
+                case "current_unit_price" -> product.setCurrentUnitPrice(readDouble(reader));
+                case "weight" -> product.setWeight(readDouble(reader));
+                case "weight_unit" -> product.setWeightUnit(readString(reader, ""));
+                case "store" -> product.setStore(readStore(reader));
+                case "category" -> product.setCategory(readCategories(reader));
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return product;
+    }
+
+    private static String readId(BsonReader reader) {
+        return switch (reader.getCurrentBsonType()) {
+            case OBJECT_ID -> reader.readObjectId().toHexString();
+            case STRING -> reader.readString();
+            default -> {
+                reader.skipValue();
+                yield null;
+            }
+        };
+    }
+
+    private static String readString(BsonReader reader, String missing) {
+        if (reader.getCurrentBsonType() == BsonType.STRING) {
+            return reader.readString();
+        }
+        reader.skipValue();
+        return missing;
+    }
+
+    // Prices are written as doubles, but a whole-number price may have been stored as an integer
+    private static double readDouble(BsonReader reader) {
+        return switch (reader.getCurrentBsonType()) {
+            case DOUBLE -> reader.readDouble();
+            case INT32 -> reader.readInt32();
+            case INT64 -> reader.readInt64();
+            case DECIMAL128 -> reader.readDecimal128().doubleValue();
+            default -> {
+                reader.skipValue();
+                yield 0.0;
+            }
+        };
+    }
+
+    private static int readInt(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.INT32) {
+            return reader.readInt32();
+        }
+        reader.skipValue();
+        return 0;
+    }
+
+    private static Product.Store readStore(BsonReader reader) {
+        if (reader.getCurrentBsonType() != BsonType.DOCUMENT) {
+            reader.skipValue();
+            return null;
+        }
+
+        Product.Store store = new Product.Store();
+        store.setName("");
+        store.setCode("");
+        store.setUrl("");
+        store.setLogo("");
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.readName()) {
+                case "name" -> store.setName(readString(reader, ""));
+                case "code" -> store.setCode(readString(reader, ""));
+                case "url" -> store.setUrl(readString(reader, ""));
+                case "logo" -> store.setLogo(readString(reader, ""));
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return store;
+    }
+
+    private static List<Product.Category> readCategories(BsonReader reader) {
+        if (reader.getCurrentBsonType() != BsonType.ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+
+        List<Product.Category> categories = new ArrayList<>();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.getCurrentBsonType() != BsonType.DOCUMENT) {
+                reader.skipValue();
+                continue;
+            }
+
+            Product.Category category = new Product.Category();
+            category.setName("");
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                switch (reader.readName()) {
+                    case "id" -> category.setId(readInt(reader));
+                    case "depth" -> category.setDepth(readInt(reader));
+                    case "name" -> category.setName(readString(reader, ""));
+                    default -> reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+            categories.add(category);
+        }
+        reader.readEndArray();
+        return categories;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, Product product, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        if (product.getId() != null) {
+            writer.writeName("_id");
+            if (ObjectId.isValid(product.getId())) {
+                writer.writeObjectId(new ObjectId(product.getId()));
+            } else {
+                writer.writeString(product.getId());
+            }
+        }
+        writeString(writer, "ean", product.getEan());
+        writeString(writer, "name", product.getName());
+        writeString(writer, "brand", product.getBrand());
+        writeString(writer, "vendor", product.getVendor());
+        writeString(writer, "url", product.getUrl());
+        writeString(writer, "image", product.getImage());
+        writeString(writer, "description", product.getDescription());
+        writer.writeDouble("current_price", product.getCurrentPrice());
+        writer.writeDouble("current_unit_price", product.getCurrentUnitPrice());
+        writer.writeDouble("weight", product.getWeight());
+        writeString(writer, "weight_unit", product.getWeightUnit());
+
+        Product.Store store = product.getStore();
+        if (store != null) {
+            writer.writeStartDocument("store");
+            writeString(writer, "name", store.getName());
+            writeString(writer, "code", store.getCode());
+            writeString(writer, "url", store.getUrl());
+            writeString(writer, "logo", store.getLogo());
+            writer.writeEndDocument();
+        }
+
+        if (product.getCategory() != null) {
+            writer.writeStartArray("category");
+            for (Product.Category category : product.getCategory()) {
+                writer.writeStartDocument();
+                writer.writeInt32("id", category.getId());
+                writer.writeInt32("depth", category.getDepth());
+                writeString(writer, "name", category.getName());
+                writer.writeEndDocument();
+            }
+            writer.writeEndArray();
+        }
+        writer.writeEndDocument();
+    }
+
+    private static void writeString(BsonWriter writer, String name, String value) {
+        if (value != null) {
+            writer.writeString(name, value);
+        }
+    }
+
+    @Override
+    public Class<Product> getEncoderClass() {
+        return Product.class;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.tasterj.repository;
+
+import com.example.tasterj.dto.PriceHistoryDto;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.model.TimeSeriesOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static com.mongodb.client.model.Filters.*;
+
+@Repository
+public class ProductPriceHistoryRepository {
+
+    public static final ZoneId ZONE = ZoneId.of("Europe/Oslo");
+
+    private static final String HISTORY_COLLECTION = "product_price_history";
+    private static final String DAILY_COLLECTION = "product_price_daily";
+
+    private final MongoDatabase database;
+    private final MongoCollection<Document> history;
+    private final MongoCollection<Document> daily;
+
+    @Autowired
+    public ProductPriceHistoryRepository(MongoClient mongoClient, @Value("${mongodb.database}") String databaseName) {
+        this.database = mongoClient.getDatabase(databaseName);
+        this.history = database.getCollection(HISTORY_COLLECTION);
+        this.daily = database.getCollection(DAILY_COLLECTION);
+    }
+
+    // Create the time-series collection and the daily bucket index if they do not exist yet
+    public void ensureCollections() {
+        try {
+            database.createCollection(HISTORY_COLLECTION, new CreateCollectionOptions()
+                    .timeSeriesOptions(new TimeSeriesOptions("ts")
+                            .metaField("meta")
+                            .granularity(TimeSeriesGranularity.HOURS)));
+        } catch (MongoCommandException e) {
+            // 48 = NamespaceExists
+            if (e.getErrorCode() != 48) {
+                throw e;
+            }
+        }
+
+        daily.createIndex(Indexes.ascending("ean", "store_code", "day"), new IndexOptions().unique(true).name("ean_store_day"));
+    }
+
+    public MongoCollection<Document> getHistoryCollection() {
+        return history;
+    }
+
+    public MongoCollection<Document> getDailyCollection() {
+        return daily;
+    }
+
+    // One raw observation in the time-series collection
+    public WriteModel<Document> historyInsert(String ean, String storeCode, double price, double unitPrice, Instant observedAt) {
+        return new InsertOneModel<>(new Document("ts", Date.from(observedAt))
+                .append("meta", new Document("ean", ean).append("store_code", storeCode))
+                .append("price", price)
+                .append("unit_price", unitPrice));
+    }
+
+    // Folds an observation into the pre-aggregated bucket for its day
+    public WriteModel<Document> dailyUpsert(String ean, String storeCode, double price, Instant observedAt) {
+        Date day = Date.from(observedAt.atZone(ZONE).toLocalDate().atStartOfDay(ZONE).toInstant());
+
+        Bson filter = and(eq("ean", ean), eq("store_code", storeCode), eq("day", day));
+        Bson update = Updates.combine(
+                Updates.min("min", price),
+                Updates.max("max", price),
+                Updates.inc("sum", price),
+                Updates.inc("count", 1),
+                Updates.set("last_price", price),
+                Updates.set("updated_at", Date.from(observedAt)));
+
+        return new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true));
+    }
+
+    // Roll the daily buckets of an EAN up to the requested interval (day, week or month), per store. Every sync
+    // folds each listed product into its day, so the average over a week or month is the mean of the daily
+    // averages: each day counts once, however many syncs saw it.
+    public List<PriceHistoryDto.StoreSeries> findSeries(String ean, List<String> storeCodes, LocalDate from, LocalDate to, String interval) {
+        List<Bson> filters = new ArrayList<>();
+        filters.add(eq("ean", ean));
+        filters.add(gte("day", Date.from(from.atStartOfDay(ZONE).toInstant())));
+        filters.add(lt("day", Date.from(to.plusDays(1).atStartOfDay(ZONE).toInstant())));
+        if (storeCodes != null && !storeCodes.isEmpty()) {
+            filters.add(in("store_code", storeCodes));
+        }
+
+        Document dateTrunc = new Document("date", "$day")
+                .append("unit", interval)
+                .append("timezone", ZONE.getId());
+        if ("week".equals(interval)) {
+            dateTrunc.append("startOfWeek", "monday");
+        }
+
+        List<Bson> pipeline = List.of(
+                Aggregates.match(and(filters)),
+                Aggregates.group(new Document("store", "$store_code").append("bucket", new Document("$dateTrunc", dateTrunc)),
+                        Accumulators.min("min", "$min"),
+                        Accumulators.max("max", "$max"),
+                        Accumulators.avg("avg", new Document("$divide", List.of("$sum", "$count")))),
+                Aggregates.sort(Sorts.ascending("_id.bucket")),
+                Aggregates.group("$_id.store",
+                        Accumulators.push("points", new Document("date", "$_id.bucket")
+                                .append("min", "$min")
+                                .append("max", "$max")
+                                .append("avg", "$avg"))),
+                Aggregates.sort(Sorts.ascending("_id")));
+
+        List<PriceHistoryDto.StoreSeries> series = new ArrayList<>();
+        for (Document document : daily.aggregate(pipeline)) {
+            series.add(documentToSeries(document));
+        }
+        return series;
+    }
+
+    private PriceHistoryDto.StoreSeries documentToSeries(Document document) {
+        PriceHistoryDto.StoreSeries storeSeries = new PriceHistoryDto.StoreSeries();
+        storeSeries.setStoreCode(document.getString("_id"));
+
+        List<PriceHistoryDto.PricePoint> points = new ArrayList<>();
+        for (Document pointDoc : document.getList("points", Document.class)) {
+            PriceHistoryDto.PricePoint point = new PriceHistoryDto.PricePoint();
+            point.setDate(pointDoc.getDate("date").toInstant().atZone(ZONE).toLocalDate());
+            point.setMin(getDouble(pointDoc, "min"));
+            point.setAvg(getDouble(pointDoc, "avg"));
+            point.setMax(getDouble(pointDoc, "max"));
+            points.add(point);
+        }
+        storeSeries.setPoints(points);
+        return storeSeries;
+    }
+
+    private double getDouble(Document document, String key) {
+        Number value = document.get(key, Number.class);
+        return value != null ? value.doubleValue() : 0.0;
+    }
+}
@@ -1,64 +1,176 @@
 package com.example.tasterj.repository;
 
 import com.example.tasterj.model.Product;
+import com.example.tasterj.model.ProductKey;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import org.bson.BsonType;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import static com.mongodb.client.model.Filters.*;
 
 @Repository
 public class ProductRepository {
 
+    // Just what price calculation reads
+    public static final Bson PRICE_PROJECTION = Projections.include("ean", "store.code", "current_price");
+
     private final MongoCollection<Document> collection;
+    // The same collection decoded by ProductCodec, straight into Product
+    private final MongoCollection<Product> products;
 
     @Autowired
-    public ProductRepository(MongoClient mongoClient) {
-        MongoDatabase database = mongoClient.getDatabase("products");
+    public ProductRepository(MongoClient mongoClient, @Value("${mongodb.database}") String databaseName) {
+        MongoDatabase database = mongoClient.getDatabase(databaseName);
         this.collection = database.getCollection("products_collection");
+        this.products = collection.withDocumentClass(Product.class);
     }
 
     // Find a product by its EAN
     public Optional<Product> findByEan(String ean) {
-        Document document = collection.find(and(eq("ean", ean), gte("current_price", 1.0))).first();
-        return Optional.ofNullable(document).map(this::documentToProduct);
+        return Optional.ofNullable(products.find(eanFilter(ean)).first());
+    }
+
+    // Find up to limit products that contain a specific keyword in their name, filtering out products with price below 1kr
+    public List<Product> findByNameContaining(String name, int limit) {
+        return products.find(nameContainingFilter(name)).limit(limit).into(new ArrayList<>());
     }
 
-    // Find all products that contain a specific keyword in their name, filtering out products with price below 1kr
-    public List<Product> findByNameContaining(String name) {
-        List<Product> products = new ArrayList<>();
-        for (Document document : collection.find(and(regex("name", name, "i"), gte("current_price", 1.0)))) {
-            products.add(documentToProduct(document));
+    // The _ids of up to limit products that findByNameContaining would return, without reading the products
+    public List<Object> findIdsByNameContaining(String name, int limit) {
+        List<Object> ids = new ArrayList<>();
+        for (Document document : collection.find(nameContainingFilter(name)).projection(Projections.include("_id")).limit(limit)) {
+            ids.add(document.get("_id"));
         }
-        return products;
+        return ids;
     }
 
     // Find all products from a specific store by store code, filtering out products with price below 1kr
     public List<Product> findByStoreCode(String storeCode) {
-        List<Product> products = new ArrayList<>();
-        for (Document document : collection.find(and(eq("store.code", storeCode), gte("current_price", 1.0)))) {
-            products.add(documentToProduct(document));
-        }
-        return products;
+        return products.find(storeCodeFilter(storeCode)).into(new ArrayList<>());
     }
 
     // Find a product by EAN and store code, filtering out products with price below 1kr
     public Optional<Product> findByEanAndStoreCode(String ean, String storeCode) {
-        Document document = collection.find(and(eq("ean", ean), eq("store.code", storeCode), gte("current_price", 1.0))).first();
-        return Optional.ofNullable(document).map(this::documentToProduct);
+        return Optional.ofNullable(products.find(eanAndStoreCodeFilter(ean, storeCode)).first());
+    }
+
+    // Resolve many (ean, storeCode) pairs in one round trip. Keys without a matching product are absent from the map.
+    public Map<ProductKey, Product> findByEanAndStoreCodes(Collection<ProductKey> keys) {
+        return findByEanAndStoreCodes(keys, null);
+    }
+
+    // Current prices of many (ean, storeCode) pairs in one round trip, decoding only the fields in PRICE_PROJECTION
+    public Map<ProductKey, Double> findPricesByEanAndStoreCodes(Collection<ProductKey> keys) {
+        Map<ProductKey, Double> prices = new HashMap<>();
+        findByEanAndStoreCodes(keys, PRICE_PROJECTION).forEach((key, product) -> prices.put(key, product.getCurrentPrice()));
+        return prices;
+    }
+
+    private Map<ProductKey, Product> findByEanAndStoreCodes(Collection<ProductKey> keys, Bson projection) {
+        Set<ProductKey> wanted = new HashSet<>();
+        for (ProductKey key : keys) {
+            if (key.getEan() != null && key.getStoreCode() != null) {
+                wanted.add(key);
+            }
+        }
+
+        Map<ProductKey, Product> found = new HashMap<>();
+        if (wanted.isEmpty()) {
+            return found;
+        }
+
+        for (Product product : products.find(eanAndStoreCodesFilter(wanted)).projection(projection)) {
+            ProductKey key = new ProductKey(product.getEan(), product.getStore() != null ? product.getStore().getCode() : null);
+            // The $in on both fields also matches the cross pairs, e.g. ean A in the store of ean B
+            if (wanted.contains(key) && !found.containsKey(key)) {
+                found.put(key, product);
+            }
+        }
+        return found;
+    }
+
+    // The filters are kept apart from the queries so the query-plan tests can explain() exactly what runs here.
+    // Each one is covered by an index declared in ProductIndexInitializer.
+
+    static Bson eanFilter(String ean) {
+        return and(eq("ean", ean), gte("current_price", 1.0));
+    }
+
+    static Bson nameContainingFilter(String name) {
+        return and(regex("name", Pattern.compile(Pattern.quote(name), Pattern.CASE_INSENSITIVE)), gte("current_price", 1.0));
+    }
+
+    static Bson storeCodeFilter(String storeCode) {
+        return and(eq("store.code", storeCode), gte("current_price", 1.0));
+    }
+
+    static Bson eanAndStoreCodeFilter(String ean, String storeCode) {
+        return and(eq("ean", ean), eq("store.code", storeCode), gte("current_price", 1.0));
+    }
+
+    // Index bounds are the cross product of both $in lists, which stays small for one recipe's ingredients
+    static Bson eanAndStoreCodesFilter(Collection<ProductKey> keys) {
+        Set<String> eans = new HashSet<>();
+        Set<String> storeCodes = new HashSet<>();
+        for (ProductKey key : keys) {
+            eans.add(key.getEan());
+            storeCodes.add(key.getStoreCode());
+        }
+        return and(in("ean", eans), in("store.code", storeCodes), gte("current_price", 1.0));
+    }
+
+    // Product search: every word must appear in the name or a category name, optionally within a brand
+    // (or vendor, as told by brandField) and stores
+    public static Bson searchFilter(List<String> words, String brandField, String brand, List<String> storeNames) {
+        List<Bson> filters = new ArrayList<>();
+
+        for (String word : words) {
+            Pattern pattern = Pattern.compile(Pattern.quote(word), Pattern.CASE_INSENSITIVE);
+            filters.add(or(regex("name", pattern), regex("category.name", pattern)));
+        }
+
+        if (brand != null) {
+            filters.add(regex(brandField, Pattern.compile(Pattern.quote(brand), Pattern.CASE_INSENSITIVE)));
+        }
+
+        if (storeNames != null && !storeNames.isEmpty()) {
+            filters.add(in("store.name", storeNames));
+        }
+
+        return filters.isEmpty() ? new Document() : and(filters);
+    }
+
+    // Range predicate for search-after paging in _id order. $gt only compares within one BSON type, and legacy
+    // string ids sort before all ObjectIds, so after a string id every ObjectId still follows.
+    public static Bson afterIdFilter(Object lastId) {
+        if (lastId instanceof String) {
+            return or(gt("_id", lastId), type("_id", BsonType.OBJECT_ID));
+        }
+        return gt("_id", lastId);
     }
 
-    // Utility: Convert a MongoDB Document to a Product object
+    // Utility: Convert a MongoDB Document to a Product object, for queries that need the Document itself
+    // (e.g. the raw _id for search cursors). Queries returning products decode with ProductCodec instead.
     public Product documentToProduct(Document document) {
         Product product = new Product();
 
@@ -3,19 +3,23 @@ package com.example.tasterj.repository;
 import com.example.tasterj.model.Recipe;
 import com.example.tasterj.model.SavedRecipe;
 import com.example.tasterj.model.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface RecipeRepository extends JpaRepository<Recipe, String>, JpaSpecificationExecutor<Recipe> {
+public interface RecipeRepository extends JpaRepository<Recipe, String>, JpaSpecificationExecutor<Recipe>, RecipeSearchRepository {
 
     Page<Recipe> findByUser_SupabaseUserId(String supabaseUserId, Pageable pageable);
 
@@ -30,13 +34,36 @@ public interface RecipeRepository extends JpaRepository<Recipe, String>, JpaSpec
     Page<Recipe> findAllWithPriceFilter(@Param("minPrice") double minPrice, @Param("maxPrice") double maxPrice, Pageable pageable);
 
 
-    @Query("SELECT r FROM Recipe r JOIN r.tags t WHERE r.userId = :userId AND r.isPublic = false AND (LOWER(r.name) LIKE LOWER(CONCAT('%', :query, '%')) OR LOWER(t) LIKE LOWER(CONCAT('%', :query, '%'))) AND r.storedPrice BETWEEN :minPrice AND :maxPrice")
-    Page<Recipe> findUserPrivateRecipes(@Param("query") String query, @Param("minPrice") double minPrice, @Param("maxPrice") double maxPrice, @Param("userId") String userId, Pageable pageable);
-
     @Query("SELECT r FROM Recipe r WHERE r.isPublic = true AND r.storedPrice BETWEEN :minPrice AND :maxPrice")
     Page<Recipe> findPublicRecipesWithPriceFilter(@Param("minPrice") double minPrice, @Param("maxPrice") double maxPrice, Pageable pageable);
 
-    @Query("SELECT r FROM Recipe r JOIN r.tags t WHERE (LOWER(r.name) LIKE LOWER(CONCAT('%', :query, '%')) OR LOWER(t) LIKE LOWER(CONCAT('%', :query, '%'))) AND r.isPublic = true AND r.storedPrice BETWEEN :minPrice AND :maxPrice")
-    Page<Recipe> findPublicByNameOrTagsWithPriceFilter(@Param("query") String query, @Param("minPrice") double minPrice, @Param("maxPrice") double maxPrice, Pageable pageable);}
+    // The prices of the recipes after afterId in id order, for walking the table in chunks without loading recipes
+    @Query("SELECT r.id AS id, r.storedPrice AS storedPrice, r.currentPrice AS currentPrice FROM Recipe r WHERE r.id > :afterId ORDER BY r.id")
+    List<PriceView> findPricesAfter(@Param("afterId") String afterId, Limit limit);
+
+    @Query("SELECT r.id FROM Recipe r WHERE r.id > :afterId ORDER BY r.id")
+    List<String> findIdsAfter(@Param("afterId") String afterId, Limit limit);
+
+    @Query("SELECT r.id AS id, r.storedPrice AS storedPrice, r.currentPrice AS currentPrice FROM Recipe r WHERE r.id IN :ids")
+    List<PriceView> findPricesByIds(@Param("ids") Collection<String> ids);
+
+    // Only applies while the prices are still the ones the new price was computed from, so an edit of the
+    // recipe in the meantime wins. Leaves updated_at alone, since the recipe itself did not change.
+    @Modifying
+    @Query("UPDATE Recipe r SET r.currentPrice = :currentPrice, r.storedPrice = :storedPrice, r.priceLastUpdated = :priceLastUpdated " +
+            "WHERE r.id = :id AND r.currentPrice = :previousCurrentPrice AND r.storedPrice = :previousStoredPrice")
+    int updatePrices(@Param("id") String id, @Param("previousCurrentPrice") double previousCurrentPrice,
+                     @Param("previousStoredPrice") double previousStoredPrice, @Param("currentPrice") double currentPrice,
+                     @Param("storedPrice") double storedPrice, @Param("priceLastUpdated") LocalDateTime priceLastUpdated);
+
+    interface PriceView {
+
+        String getId();
+
+        double getStoredPrice();
+
+        double getCurrentPrice();
+    }
+}
 
 
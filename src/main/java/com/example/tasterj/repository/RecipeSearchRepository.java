@@ -0,0 +1,32 @@
+package com.example.tasterj.repository;
+
+import com.example.tasterj.model.Recipe;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+// Full-text recipe search over recipes.search_vector (see RecipeSearchInitializer). Pageable may sort by
+// storedPrice, createdAt or relevance; results are unique per recipe and include recipes without tags.
+//
+// The scroll variants seek instead of paging: they return up to limit recipes strictly after the
+// (sort value, id) pair of the previous slice's last recipe, or from the start when afterId is null, and
+// never count. sortProperty is storedPrice or createdAt.
+public interface RecipeSearchRepository {
+
+    Page<Recipe> searchPublic(String query, double minPrice, double maxPrice, Pageable pageable);
+
+    Page<Recipe> searchUserPrivate(String query, double minPrice, double maxPrice, String userId, Pageable pageable);
+
+    // Newest first
+    List<Recipe> scrollAll(Object afterValue, String afterId, int limit);
+
+    // Newest first
+    List<Recipe> scrollByUser(String userId, Object afterValue, String afterId, int limit);
+
+    List<Recipe> scrollPublic(String query, double minPrice, double maxPrice, String sortProperty, boolean ascending,
+                              Object afterValue, String afterId, int limit);
+
+    List<Recipe> scrollUserPrivate(String query, double minPrice, double maxPrice, String userId, String sortProperty,
+                                   boolean ascending, Object afterValue, String afterId, int limit);
+}
@@ -0,0 +1,236 @@
+package com.example.tasterj.repository;
+
+import com.example.tasterj.model.Recipe;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Matches with the GIN index on search_vector instead of LIKE over a join with recipe_tags, which scanned
+// every recipe and returned a recipe once per matching tag. Every query word matches as a prefix of a stemmed
+// word, so a search typed halfway ("kyll") still finds its recipes. Unlike the substring search it replaced,
+// a word only matches from the start of a word ("gryte" no longer finds "kyllinggryte"), and query words are
+// stemmed before the prefix match. A query of stopwords only ("med") stems to nothing, so it falls back to
+// the old substring match on name and tags instead of matching no recipe at all.
+public class RecipeSearchRepositoryImpl implements RecipeSearchRepository {
+
+    public static final String RELEVANCE = "relevance";
+
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "storedPrice", "r.stored_price",
+            "createdAt", "r.created_at");
+
+    // The substring search this replaced, without the join that returned a recipe once per tag
+    private static final String SUBSTRING_MATCH = " AND (r.name ILIKE :pattern"
+            + " OR EXISTS (SELECT 1 FROM recipe_tags t WHERE t.recipe_id = r.id AND t.tag ILIKE :pattern))";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Recipe> searchPublic(String query, double minPrice, double maxPrice, Pageable pageable) {
+        return search(query, "r.is_public = true", null, minPrice, maxPrice, pageable);
+    }
+
+    @Override
+    public Page<Recipe> searchUserPrivate(String query, double minPrice, double maxPrice, String userId, Pageable pageable) {
+        return search(query, "r.user_id = :userId AND r.is_public = false", userId, minPrice, maxPrice, pageable);
+    }
+
+    @Override
+    public List<Recipe> scrollAll(Object afterValue, String afterId, int limit) {
+        return scroll(null, "TRUE", null, null, "createdAt", false, afterValue, afterId, limit);
+    }
+
+    @Override
+    public List<Recipe> scrollByUser(String userId, Object afterValue, String afterId, int limit) {
+        return scroll(null, "r.user_id = :userId", userId, null, "createdAt", false, afterValue, afterId, limit);
+    }
+
+    @Override
+    public List<Recipe> scrollPublic(String query, double minPrice, double maxPrice, String sortProperty, boolean ascending,
+                                     Object afterValue, String afterId, int limit) {
+        return scroll(query, "r.is_public = true", null, new double[]{minPrice, maxPrice}, sortProperty, ascending,
+                afterValue, afterId, limit);
+    }
+
+    @Override
+    public List<Recipe> scrollUserPrivate(String query, double minPrice, double maxPrice, String userId, String sortProperty,
+                                          boolean ascending, Object afterValue, String afterId, int limit) {
+        return scroll(query, "r.user_id = :userId AND r.is_public = false", userId, new double[]{minPrice, maxPrice},
+                sortProperty, ascending, afterValue, afterId, limit);
+    }
+
+    // Seeks through idx_recipes_created_at_id or idx_recipes_stored_price_id. The redundant "column <= value"
+    // (">=" ascending) gives Postgres a range on the index's sort column; the OR then only decides the ties.
+    @SuppressWarnings("unchecked")
+    private List<Recipe> scroll(String query, String filter, String userId, double[] priceRange, String sortProperty,
+                                boolean ascending, Object afterValue, String afterId, int limit) {
+        String column = SORT_COLUMNS.get(sortProperty);
+        if (column == null) {
+            throw new IllegalArgumentException("Recipes cannot be scrolled by " + sortProperty + ".");
+        }
+        String prefixQuery = toPrefixQuery(query);
+        boolean stopwordsOnly = prefixQuery != null && !hasLexemes(prefixQuery);
+        String tsQuery = stopwordsOnly ? null : prefixQuery;
+        String pattern = stopwordsOnly ? toSubstringPattern(query) : null;
+        String after = ascending ? ">" : "<";
+        String direction = ascending ? " ASC" : " DESC";
+
+        StringBuilder sql = new StringBuilder("SELECT r.* FROM recipes r WHERE ").append(filter);
+        if (priceRange != null) {
+            sql.append(" AND r.stored_price BETWEEN :minPrice AND :maxPrice");
+        }
+        if (tsQuery != null) {
+            sql.append(" AND r.search_vector @@ to_tsquery('norwegian', :query)");
+        }
+        if (pattern != null) {
+            sql.append(SUBSTRING_MATCH);
+        }
+        if (afterId != null) {
+            sql.append(" AND ").append(column).append(' ').append(after).append("= :afterValue")
+                    .append(" AND (").append(column).append(' ').append(after).append(" :afterValue")
+                    .append(" OR r.id ").append(after).append(" :afterId)");
+        }
+        sql.append(" ORDER BY ").append(column).append(direction).append(", r.id").append(direction);
+
+        Query select = entityManager.createNativeQuery(sql.toString(), Recipe.class);
+        if (priceRange != null) {
+            select.setParameter("minPrice", priceRange[0]);
+            select.setParameter("maxPrice", priceRange[1]);
+        }
+        if (tsQuery != null) {
+            select.setParameter("query", tsQuery);
+        }
+        if (pattern != null) {
+            select.setParameter("pattern", pattern);
+        }
+        if (userId != null) {
+            select.setParameter("userId", userId);
+        }
+        if (afterId != null) {
+            select.setParameter("afterValue", afterValue);
+            select.setParameter("afterId", afterId);
+        }
+        select.setMaxResults(limit);
+        return select.getResultList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Page<Recipe> search(String query, String visibility, String userId, double minPrice, double maxPrice, Pageable pageable) {
+        String prefixQuery = toPrefixQuery(query);
+        boolean stopwordsOnly = prefixQuery != null && !hasLexemes(prefixQuery);
+        String tsQuery = stopwordsOnly ? null : prefixQuery;
+        String pattern = stopwordsOnly ? toSubstringPattern(query) : null;
+
+        StringBuilder where = new StringBuilder(" WHERE ").append(visibility)
+                .append(" AND r.stored_price BETWEEN :minPrice AND :maxPrice");
+        if (tsQuery != null) {
+            where.append(" AND r.search_vector @@ to_tsquery('norwegian', :query)");
+        }
+        if (pattern != null) {
+            where.append(SUBSTRING_MATCH);
+        }
+
+        Query select = entityManager.createNativeQuery("SELECT r.* FROM recipes r" + where
+                + orderBy(pageable.getSort(), tsQuery != null), Recipe.class);
+        bind(select, tsQuery, pattern, userId, minPrice, maxPrice);
+        if (pageable.isPaged()) {
+            select.setFirstResult((int) pageable.getOffset());
+            select.setMaxResults(pageable.getPageSize());
+        }
+        List<Recipe> recipes = select.getResultList();
+
+        // Only counted when the page does not already tell the total
+        return PageableExecutionUtils.getPage(recipes, pageable, () -> {
+            Query count = entityManager.createNativeQuery("SELECT count(*) FROM recipes r" + where);
+            bind(count, tsQuery, pattern, userId, minPrice, maxPrice);
+            return ((Number) count.getSingleResult()).longValue();
+        });
+    }
+
+    private static void bind(Query query, String tsQuery, String pattern, String userId, double minPrice, double maxPrice) {
+        query.setParameter("minPrice", minPrice);
+        query.setParameter("maxPrice", maxPrice);
+        if (tsQuery != null) {
+            query.setParameter("query", tsQuery);
+        }
+        if (pattern != null) {
+            query.setParameter("pattern", pattern);
+        }
+        if (userId != null) {
+            query.setParameter("userId", userId);
+        }
+    }
+
+    // The id last, so pages are stable when the sort keys tie
+    private static String orderBy(Sort sort, boolean ranked) {
+        List<String> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            String direction = order.isAscending() ? " ASC" : " DESC";
+            if (RELEVANCE.equals(order.getProperty())) {
+                if (ranked) {
+                    orders.add("ts_rank(r.search_vector, to_tsquery('norwegian', :query))" + direction);
+                }
+                continue;
+            }
+            String column = SORT_COLUMNS.get(order.getProperty());
+            if (column == null) {
+                throw new IllegalArgumentException("Recipes cannot be sorted by " + order.getProperty() + ".");
+            }
+            orders.add(column + direction);
+        }
+        orders.add("r.id ASC");
+        return " ORDER BY " + String.join(", ", orders);
+    }
+
+    // Whether the query keeps any word once the Norwegian configuration has dropped its stopwords. Costs a
+    // round trip without touching a table; to_tsquery is not folded at plan time, so checking this inside the
+    // search itself would keep Postgres from planning the GIN index scan.
+    private boolean hasLexemes(String tsQuery) {
+        Query lexemes = entityManager.createNativeQuery("SELECT numnode(to_tsquery('norwegian', :query)) > 0");
+        lexemes.setParameter("query", tsQuery);
+        return (Boolean) lexemes.getSingleResult();
+    }
+
+    // "Kyllinggryte med ris" -> "kyllinggryte:* & med:* & ris:*", or null without any word. Only letters and
+    // digits get through, so the user's text can never be read as tsquery operators.
+    static String toPrefixQuery(String query) {
+        List<String> words = words(query);
+        if (words.isEmpty()) {
+            return null;
+        }
+        List<String> terms = new ArrayList<>();
+        for (String word : words) {
+            terms.add(word + ":*");
+        }
+        return String.join(" & ", terms);
+    }
+
+    // "Med og" -> "%med%og%", or null without any word. Letters and digits only, so no LIKE wildcards get in.
+    static String toSubstringPattern(String query) {
+        List<String> words = words(query);
+        return words.isEmpty() ? null : "%" + String.join("%", words) + "%";
+    }
+
+    private static List<String> words(String query) {
+        List<String> words = new ArrayList<>();
+        if (query == null) {
+            return words;
+        }
+        for (String word : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
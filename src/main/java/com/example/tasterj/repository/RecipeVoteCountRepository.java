@@ -0,0 +1,42 @@
+package com.example.tasterj.repository;
+
+import com.example.tasterj.model.RecipeVoteCount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+
+@Repository
+public interface RecipeVoteCountRepository extends JpaRepository<RecipeVoteCount, String> {
+
+    // Adds to the recipe's counts, creating them on its first vote. Holds the row lock until commit, so with
+    // zero deltas it serialises everything else counting the recipe's votes behind the caller.
+    @Modifying
+    @Query(value = "INSERT INTO recipe_vote_counts (recipe_id, upvotes, downvotes) VALUES (:recipeId, :upvotes, :downvotes) " +
+            "ON CONFLICT (recipe_id) DO UPDATE SET upvotes = recipe_vote_counts.upvotes + EXCLUDED.upvotes, " +
+            "downvotes = recipe_vote_counts.downvotes + EXCLUDED.downvotes", nativeQuery = true)
+    int addVotes(@Param("recipeId") String recipeId, @Param("upvotes") int upvotes, @Param("downvotes") int downvotes);
+
+    // Creates missing counts for the recipes and locks all of them until commit
+    @Modifying
+    @Query(value = "INSERT INTO recipe_vote_counts (recipe_id, upvotes, downvotes) " +
+            "SELECT r.id, 0, 0 FROM recipes r WHERE r.id IN (:recipeIds) ORDER BY r.id " +
+            "ON CONFLICT (recipe_id) DO UPDATE SET upvotes = recipe_vote_counts.upvotes", nativeQuery = true)
+    int lockCounts(@Param("recipeIds") Collection<String> recipeIds);
+
+    // Sets the recipes' counts to what votes holds, returning how many were wrong. Call after lockCounts in
+    // the same transaction, so no vote on these recipes can be in flight while they are counted.
+    @Modifying
+    @Query(value = "WITH counted AS (" +
+            "SELECT c.recipe_id, " +
+            "(SELECT count(*) FROM votes v WHERE v.recipe_id = c.recipe_id AND v.vote_type = 'UPVOTE') AS upvotes, " +
+            "(SELECT count(*) FROM votes v WHERE v.recipe_id = c.recipe_id AND v.vote_type = 'DOWNVOTE') AS downvotes " +
+            "FROM recipe_vote_counts c WHERE c.recipe_id IN (:recipeIds)) " +
+            "UPDATE recipe_vote_counts c SET upvotes = counted.upvotes, downvotes = counted.downvotes FROM counted " +
+            "WHERE c.recipe_id = counted.recipe_id AND (c.upvotes <> counted.upvotes OR c.downvotes <> counted.downvotes)",
+            nativeQuery = true)
+    int recount(@Param("recipeIds") Collection<String> recipeIds);
+}
@@ -7,9 +7,11 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +23,15 @@ public interface SavedRecipeRepository extends JpaRepository<SavedRecipe, String
     @Query("SELECT sr FROM SavedRecipe sr JOIN FETCH sr.recipe WHERE sr.user = :user")
     Page<SavedRecipe> findByUserWithRecipes(@Param("user") User user, Pageable pageable);
 
+    // Most recently saved first, seeking past (savedAt, id) of the previous slice's last entry
+    @Query("SELECT sr FROM SavedRecipe sr JOIN FETCH sr.recipe WHERE sr.user = :user ORDER BY sr.savedAt DESC, sr.id DESC")
+    List<SavedRecipe> findLatestByUserWithRecipes(@Param("user") User user, Limit limit);
+
+    @Query("SELECT sr FROM SavedRecipe sr JOIN FETCH sr.recipe WHERE sr.user = :user " +
+            "AND sr.savedAt <= :savedAt AND (sr.savedAt < :savedAt OR sr.id < :id) ORDER BY sr.savedAt DESC, sr.id DESC")
+    List<SavedRecipe> findByUserWithRecipesAfter(@Param("user") User user, @Param("savedAt") LocalDateTime savedAt,
+                                                 @Param("id") String id, Limit limit);
+
     void deleteByUserAndRecipe(User user, Recipe recipe);
 }
 
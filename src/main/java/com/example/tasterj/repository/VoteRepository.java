@@ -1,8 +1,6 @@
 package com.example.tasterj.repository;
 
-import com.example.tasterj.model.Recipe;
 import com.example.tasterj.model.Vote;
-import com.example.tasterj.model.VoteType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import java.util.List;
@@ -13,5 +11,4 @@ import java.util.Optional;
 public interface VoteRepository extends JpaRepository<Vote, Long> {
 
     Optional<Vote> findByUser_SupabaseUserIdAndRecipe_Id(String supabaseUserId, String recipeId);
-    int countByRecipeAndVoteType(Recipe recipe, VoteType voteType);
 }
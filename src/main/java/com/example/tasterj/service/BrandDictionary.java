@@ -0,0 +1,320 @@
+package com.example.tasterj.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import lombok.Getter;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Finds the brand (or vendor) a search query names, without asking Mongo. Brands come from brands.json and
+// the distinct brands in the catalog, vendors from vendors.json. All of them go into one Aho-Corasick
+// automaton, so a query is scanned once no matter how many brands there are.
+@Component
+public class BrandDictionary {
+
+    public static final String BRAND_FIELD = "brand";
+    public static final String VENDOR_FIELD = "vendor";
+
+    // Legal forms at the end of vendor names, e.g. "Q-MEIERIENE AS"; nobody types them when searching
+    private static final Set<String> VENDOR_SUFFIXES = Set.of("as", "asa", "sa", "ba", "ab", "da");
+
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{Nd}]+");
+
+    private final MongoCollection<Document> collection;
+    private final Map<String, Entry> resourceEntries;
+
+    private volatile Automaton automaton;
+
+    public BrandDictionary(ObjectMapper objectMapper, MongoClient mongoClient, @Value("${mongodb.database}") String databaseName) {
+        this.collection = mongoClient.getDatabase(databaseName).getCollection("products_collection");
+        this.resourceEntries = new LinkedHashMap<>();
+        readResource(objectMapper, "brands.json", "Brands", BRAND_FIELD);
+        readResource(objectMapper, "vendors.json", "Vendors", VENDOR_FIELD);
+        // Usable right away; the catalog brands are added once the application is up
+        this.automaton = Automaton.build(resourceEntries.values());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        refresh();
+    }
+
+    @EventListener
+    public void onCatalogUpdated(ProductCatalogUpdatedEvent event) {
+        refresh();
+    }
+
+    // Rebuilds the automaton with the brands now in the catalog and swaps it in as a whole
+    public void refresh() {
+        try {
+            Map<String, Entry> entries = new LinkedHashMap<>(resourceEntries);
+            for (String brand : collection.distinct("brand", String.class)) {
+                // Catalog spelling wins over brands.json, it is what the brand filter compares against
+                addEntry(entries, brand, BRAND_FIELD, true);
+            }
+            automaton = Automaton.build(entries.values());
+            System.out.println("Brand dictionary refreshed: " + entries.size() + " brands and vendors.");
+        } catch (Exception e) {
+            System.err.println("Could not refresh the brand dictionary, keeping the previous one: " + e.getMessage());
+        }
+    }
+
+    public Match detect(List<String> words) {
+        return automaton.longestMatch(words);
+    }
+
+    public int size() {
+        return automaton.size();
+    }
+
+    private void readResource(ObjectMapper objectMapper, String resource, String rootField, String field) {
+        try (InputStream in = new ClassPathResource(resource).getInputStream()) {
+            JsonNode categories = objectMapper.readTree(in).path(rootField);
+            categories.fields().forEachRemaining(category -> {
+                for (JsonNode name : category.getValue()) {
+                    addEntry(resourceEntries, name.asText(), field, false);
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Could not read " + resource + ": " + e.getMessage());
+        }
+    }
+
+    private static void addEntry(Map<String, Entry> entries, String name, String field, boolean replace) {
+        List<String> words = SearchText.tokenize(name);
+        if (VENDOR_FIELD.equals(field)) {
+            while (words.size() > 1 && VENDOR_SUFFIXES.contains(words.get(words.size() - 1))) {
+                words = words.subList(0, words.size() - 1);
+            }
+        }
+        if (words.isEmpty()) {
+            return;
+        }
+
+        String key = String.join(" ", words);
+        // Vendors are matched by containment on the lowercased field, so the value keeps its own letters
+        String value = name.trim();
+        if (VENDOR_FIELD.equals(field)) {
+            String prefix = lowercasePrefix(name, words.size());
+            value = prefix != null ? prefix : key;
+        }
+        Entry existing = entries.get(key);
+        // A name that is both a brand and a vendor is searched as a brand
+        if (existing == null || replace || (BRAND_FIELD.equals(field) && VENDOR_FIELD.equals(existing.field))) {
+            entries.put(key, new Entry(key, field, value));
+        }
+    }
+
+    // The lowercased name from its first word through its wordCount-th word, as tokenize() splits them, with
+    // the punctuation between the words kept: "Q-MEIERIENE AS" -> "q-meieriene". Null if it has fewer words.
+    static String lowercasePrefix(String name, int wordCount) {
+        String lowercase = name.toLowerCase(Locale.ROOT);
+        Matcher word = WORD.matcher(lowercase);
+        int start = -1;
+        for (int found = 0; found < wordCount; found++) {
+            if (!word.find()) {
+                return null;
+            }
+            if (start < 0) {
+                start = word.start();
+            }
+        }
+        return lowercase.substring(start, word.end());
+    }
+
+    private static class Entry {
+
+        private final String pattern;
+        private final String field;
+        private final String value;
+
+        private Entry(String pattern, String field, String value) {
+            this.pattern = pattern;
+            this.field = field;
+            this.value = value;
+        }
+    }
+
+    // A dictionary entry found in the query, covering query words [firstWord, lastWord)
+    @Getter
+    public static class Match {
+
+        private final String field;
+        private final String value;
+        private final int firstWord;
+        private final int lastWord;
+
+        private Match(String field, String value, int firstWord, int lastWord) {
+            this.field = field;
+            this.value = value;
+            this.firstWord = firstWord;
+            this.lastWord = lastWord;
+        }
+    }
+
+    // Immutable trie with failure links over the folded, single-space separated entry names
+    static final class Automaton {
+
+        private final List<Map<Character, Integer>> transitions;
+        private final int[] failure;
+        // Entry ending at this node, or -1
+        private final int[] output;
+        // Nearest node on the failure chain that has an output, or -1
+        private final int[] outputLink;
+        private final Entry[] entries;
+
+        private Automaton(List<Map<Character, Integer>> transitions, int[] failure, int[] output, int[] outputLink, Entry[] entries) {
+            this.transitions = transitions;
+            this.failure = failure;
+            this.output = output;
+            this.outputLink = outputLink;
+            this.entries = entries;
+        }
+
+        static Automaton build(Iterable<Entry> entryList) {
+            List<Map<Character, Integer>> transitions = new ArrayList<>();
+            List<Integer> outputs = new ArrayList<>();
+            List<Entry> entries = new ArrayList<>();
+            transitions.add(new HashMap<>());
+            outputs.add(-1);
+
+            for (Entry entry : entryList) {
+                int node = 0;
+                for (int i = 0; i < entry.pattern.length(); i++) {
+                    Integer next = transitions.get(node).get(entry.pattern.charAt(i));
+                    if (next == null) {
+                        next = transitions.size();
+                        transitions.get(node).put(entry.pattern.charAt(i), next);
+                        transitions.add(new HashMap<>());
+                        outputs.add(-1);
+                    }
+                    node = next;
+                }
+                outputs.set(node, entries.size());
+                entries.add(entry);
+            }
+
+            int[] output = outputs.stream().mapToInt(Integer::intValue).toArray();
+            int[] failure = new int[transitions.size()];
+            int[] outputLink = new int[transitions.size()];
+            Arrays.fill(outputLink, -1);
+
+            // Breadth first, so the failure target of a node is always finished before the node itself
+            ArrayDeque<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (Map.Entry<Character, Integer> edge : transitions.get(node).entrySet()) {
+                    int child = edge.getValue();
+                    int fallback = failure[node];
+                    while (fallback != 0 && !transitions.get(fallback).containsKey(edge.getKey())) {
+                        fallback = failure[fallback];
+                    }
+                    Integer target = transitions.get(fallback).get(edge.getKey());
+                    failure[child] = target != null && target != child ? target : 0;
+                    outputLink[child] = output[failure[child]] >= 0 ? failure[child] : outputLink[failure[child]];
+                    queue.add(child);
+                }
+            }
+
+            return new Automaton(transitions, failure, output, outputLink, entries.toArray(new Entry[0]));
+        }
+
+        int size() {
+            return entries.length;
+        }
+
+        // The entry covering the most whole query words; on a tie the longer name, then the earlier one.
+        // Word positions in the match refer to queryWords, a query word split into several tokens
+        // (e.g. "q-meieriene") is only matched as a whole.
+        Match longestMatch(List<String> queryWords) {
+            List<String> tokens = new ArrayList<>();
+            List<Integer> tokenWord = new ArrayList<>();
+            List<Boolean> tokenStartsWord = new ArrayList<>();
+            List<Boolean> tokenEndsWord = new ArrayList<>();
+            for (int w = 0; w < queryWords.size(); w++) {
+                List<String> wordTokens = SearchText.tokenize(queryWords.get(w));
+                for (int t = 0; t < wordTokens.size(); t++) {
+                    tokens.add(wordTokens.get(t));
+                    tokenWord.add(w);
+                    tokenStartsWord.add(t == 0);
+                    tokenEndsWord.add(t == wordTokens.size() - 1);
+                }
+            }
+            if (tokens.isEmpty() || entries.length == 0) {
+                return null;
+            }
+
+            String text = String.join(" ", tokens);
+            // Query word starting at each character offset, and query word ending right after it
+            int[] wordStartingAt = new int[text.length()];
+            int[] wordEndingAt = new int[text.length()];
+            Arrays.fill(wordStartingAt, -1);
+            Arrays.fill(wordEndingAt, -1);
+            int offset = 0;
+            for (int t = 0; t < tokens.size(); t++) {
+                if (tokenStartsWord.get(t)) {
+                    wordStartingAt[offset] = tokenWord.get(t);
+                }
+                offset += tokens.get(t).length();
+                if (tokenEndsWord.get(t)) {
+                    wordEndingAt[offset - 1] = tokenWord.get(t);
+                }
+                offset++;
+            }
+
+            Entry best = null;
+            int bestFirstWord = -1;
+            int bestLastWord = -1;
+            int node = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                while (node != 0 && !transitions.get(node).containsKey(c)) {
+                    node = failure[node];
+                }
+                node = transitions.get(node).getOrDefault(c, 0);
+
+                if (wordEndingAt[i] < 0) {
+                    continue;
+                }
+                for (int match = output[node] >= 0 ? node : outputLink[node]; match >= 0; match = outputLink[match]) {
+                    Entry entry = entries[output[match]];
+                    int firstWord = wordStartingAt[i - entry.pattern.length() + 1];
+                    if (firstWord < 0) {
+                        continue;
+                    }
+                    int lastWord = wordEndingAt[i] + 1;
+                    int covered = lastWord - firstWord;
+                    int bestCovered = bestLastWord - bestFirstWord;
+                    if (best == null || covered > bestCovered
+                            || (covered == bestCovered && entry.pattern.length() > best.pattern.length())) {
+                        best = entry;
+                        bestFirstWord = firstWord;
+                        bestLastWord = lastWord;
+                    }
+                }
+            }
+
+            return best != null ? new Match(best.field, best.value, bestFirstWord, bestLastWord) : null;
+        }
+    }
+}
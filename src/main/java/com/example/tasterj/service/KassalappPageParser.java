@@ -0,0 +1,211 @@
+package com.example.tasterj.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Streams the "data" array of a Kassalapp products page into BSON documents, one element at a time
+@Component
+public class KassalappPageParser {
+
+    private final JsonFactory jsonFactory;
+
+    public KassalappPageParser(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    // Returns the number of elements in the data array, including skipped ones, so callers can detect the last page
+    public int parse(InputStream body, Consumer<Document> sink) throws IOException {
+        int elements = 0;
+        boolean foundData = false;
+
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object at the start of the products page");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    foundData = true;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        elements++;
+                        Document product = readProduct(parser);
+                        if (product != null) {
+                            sink.accept(product);
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        if (!foundData) {
+            System.err.println("No 'data' field found or it's not an array.");
+        }
+        return elements;
+    }
+
+    // Produces the same field set the ingest has always written, in a fixed order. Returns null for
+    // elements that cannot be keyed by ean and store code.
+    private Document readProduct(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        String ean = null;
+        String name = null;
+        String brand = null;
+        String vendor = null;
+        String url = null;
+        String image = null;
+        String description = null;
+        String weightUnit = null;
+        double currentPrice = 0.0;
+        double currentUnitPrice = 0.0;
+        double weight = 0.0;
+        List<Document> category = null;
+        Document store = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+
+            switch (field) {
+                case "ean" -> ean = readText(parser);
+                case "name" -> name = readText(parser);
+                case "brand" -> brand = readText(parser);
+                case "vendor" -> vendor = readText(parser);
+                case "url" -> url = readText(parser);
+                case "image" -> image = readText(parser);
+                case "description" -> description = readText(parser);
+                case "weight_unit" -> weightUnit = readText(parser);
+                case "current_price" -> currentPrice = readDouble(parser);
+                case "current_unit_price" -> currentUnitPrice = readDouble(parser);
+                case "weight" -> weight = readDouble(parser);
+                case "category" -> category = readCategories(parser);
+                case "store" -> store = readStore(parser);
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (ean == null || store == null || store.getString("code") == null) {
+            return null;
+        }
+
+        return new Document("ean", ean)
+                .append("name", name)
+                .append("brand", brand)
+                .append("vendor", vendor)
+                .append("url", url)
+                .append("image", image)
+                .append("category", category)
+                .append("description", description)
+                .append("current_price", currentPrice)
+                .append("current_unit_price", currentUnitPrice)
+                .append("weight", weight)
+                .append("weight_unit", weightUnit)
+                .append("store", store);
+    }
+
+    private List<Document> readCategories(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+
+        List<Document> categories = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+
+            int id = 0;
+            int depth = 0;
+            String name = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "id" -> id = readInt(parser);
+                    case "depth" -> depth = readInt(parser);
+                    case "name" -> name = readText(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            categories.add(new Document("id", id).append("depth", depth).append("name", name));
+        }
+        return categories;
+    }
+
+    private Document readStore(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        String name = null;
+        String code = null;
+        String url = null;
+        String logo = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "name" -> name = readText(parser);
+                case "code" -> code = readText(parser);
+                case "url" -> url = readText(parser);
+                case "logo" -> logo = readText(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new Document("name", name).append("code", code).append("url", url).append("logo", logo);
+    }
+
+    private String readText(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isScalarValue()) {
+            return parser.getValueAsString();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private double readDouble(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getValueAsDouble(0.0);
+        }
+        parser.skipChildren();
+        return 0.0;
+    }
+
+    private int readInt(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isNumeric() || token == JsonToken.VALUE_STRING) {
+            return parser.getValueAsInt(0);
+        }
+        parser.skipChildren();
+        return 0;
+    }
+}
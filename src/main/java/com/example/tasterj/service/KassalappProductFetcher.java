@@ -0,0 +1,246 @@
+package com.example.tasterj.service;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fetches Kassalapp product pages concurrently on virtual threads, paced by a token bucket sized from the API rate limit
+@Component
+public class KassalappProductFetcher {
+
+    private static final int PAGE_SIZE = 100;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private final RestTemplate restTemplate;
+    private final String productUrl;
+    private final KassalappPageParser kassalappPageParser;
+    private final String apiKey;
+    private final int concurrency;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final TokenBucket rateLimiter;
+
+    public KassalappProductFetcher(RestTemplate restTemplate,
+                                   KassalappPageParser kassalappPageParser,
+                                   @Value("${kassalapp.url}") String productUrl,
+                                   @Value("${kassalapp.api}") String apiKey,
+                                   @Value("${kassalapp.rate-limit}") int rateLimit,
+                                   @Value("${kassalapp.fetch.concurrency}") int concurrency,
+                                   @Value("${kassalapp.fetch.max-retries}") int maxRetries,
+                                   @Value("${kassalapp.fetch.retry-backoff-ms}") long retryBackoffMillis) {
+        this.restTemplate = restTemplate;
+        this.productUrl = productUrl;
+        this.kassalappPageParser = kassalappPageParser;
+        this.apiKey = apiKey;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBackoffMillis = Math.max(1, retryBackoffMillis);
+        // RATE_LIMIT requests per minute, shared by every sync run in this process
+        this.rateLimiter = new TokenBucket(rateLimit, Duration.ofMinutes(1));
+    }
+
+    @FunctionalInterface
+    public interface PageHandler {
+
+        // Called from fetch threads as products are parsed; must be thread-safe
+        void onProduct(Document product);
+
+        default void onPageComplete(int page, int elements) {
+        }
+    }
+
+    // Fetches pages from firstPage until a short page is seen or a page fails permanently
+    public FetchResult fetchAll(int firstPage, PageHandler handler) {
+        FetchRun run = new FetchRun(firstPage, handler);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                executor.submit(run::work);
+            }
+        }
+
+        return run.result();
+    }
+
+    private class FetchRun {
+
+        private final PageHandler handler;
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger nextPage;
+        private final AtomicInteger lastPage = new AtomicInteger(Integer.MAX_VALUE);
+        private final AtomicInteger failedPage = new AtomicInteger(Integer.MAX_VALUE);
+        private final AtomicLong pagesFetched = new AtomicLong();
+        private final AtomicLong products = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+
+        private FetchRun(int firstPage, PageHandler handler) {
+            this.nextPage = new AtomicInteger(firstPage);
+            this.handler = handler;
+        }
+
+        private void work() {
+            while (failedPage.get() == Integer.MAX_VALUE) {
+                int page = nextPage.getAndIncrement();
+                if (page > lastPage.get()) {
+                    return;
+                }
+
+                try {
+                    int elements = fetchPage(page);
+                    pagesFetched.incrementAndGet();
+                    products.addAndGet(elements);
+
+                    if (elements < PAGE_SIZE) {
+                        lastPage.accumulateAndGet(page, Math::min);
+                    }
+                    handler.onPageComplete(page, elements);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    fail(page, e);
+                    return;
+                } catch (RuntimeException e) {
+                    fail(page, e);
+                    return;
+                }
+            }
+        }
+
+        private int fetchPage(int page) throws InterruptedException {
+            String pageUrl = productUrl + "?page=" + page + "&size=" + PAGE_SIZE;
+
+            for (int attempt = 0; ; attempt++) {
+                rateLimiter.acquire();
+                try {
+                    Integer elements = restTemplate.execute(pageUrl, HttpMethod.GET,
+                            request -> request.getHeaders().set("Authorization", "Bearer " + apiKey),
+                            response -> kassalappPageParser.parse(response.getBody(), handler::onProduct));
+                    return elements != null ? elements : 0;
+                } catch (HttpStatusCodeException e) {
+                    HttpStatusCode status = e.getStatusCode();
+                    boolean retryable = status.value() == 429 || status.is5xxServerError();
+                    if (!retryable || attempt >= maxRetries) {
+                        throw e;
+                    }
+                    backOff(page, attempt, status.toString(), e.getResponseHeaders());
+                } catch (ResourceAccessException e) {
+                    if (attempt >= maxRetries) {
+                        throw e;
+                    }
+                    backOff(page, attempt, e.getMessage(), null);
+                }
+            }
+        }
+
+        private void backOff(int page, int attempt, String reason, HttpHeaders headers) throws InterruptedException {
+            long delay = retryAfterMillis(headers);
+            if (delay <= 0) {
+                long exponential = Math.min(MAX_BACKOFF_MILLIS, retryBackoffMillis << Math.min(attempt, 16));
+                delay = exponential + ThreadLocalRandom.current().nextLong(exponential / 4 + 1);
+            }
+
+            retries.incrementAndGet();
+            System.err.println("Page " + page + " failed (" + reason + "), retrying in " + delay + " ms");
+            TimeUnit.MILLISECONDS.sleep(delay);
+        }
+
+        private long retryAfterMillis(HttpHeaders headers) {
+            String retryAfter = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+            if (retryAfter == null) {
+                return 0;
+            }
+            try {
+                return Math.min(MAX_BACKOFF_MILLIS, Long.parseLong(retryAfter.trim()) * 1000);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        private void fail(int page, Exception e) {
+            failedPage.accumulateAndGet(page, Math::min);
+            System.err.println("Failed to fetch page " + page + ": " + e.getMessage());
+        }
+
+        private FetchResult result() {
+            int failed = failedPage.get();
+            if (failed > lastPage.get()) {
+                // Only pages past the end failed, e.g. an over-fetched empty page
+                failed = Integer.MAX_VALUE;
+            }
+            return new FetchResult(
+                    pagesFetched.get(),
+                    products.get(),
+                    retries.get(),
+                    lastPage.get() == Integer.MAX_VALUE ? -1 : lastPage.get(),
+                    failed == Integer.MAX_VALUE ? -1 : failed,
+                    (System.nanoTime() - startNanos) / 1_000_000);
+        }
+    }
+
+    public static class FetchResult {
+
+        private final long pagesFetched;
+        private final long products;
+        private final long retries;
+        private final int lastPage;
+        private final int failedPage;
+        private final long elapsedMillis;
+
+        public FetchResult(long pagesFetched, long products, long retries, int lastPage, int failedPage, long elapsedMillis) {
+            this.pagesFetched = pagesFetched;
+            this.products = products;
+            this.retries = retries;
+            this.lastPage = lastPage;
+            this.failedPage = failedPage;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getPagesFetched() {
+            return pagesFetched;
+        }
+
+        public long getProducts() {
+            return products;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public int getLastPage() {
+            return lastPage;
+        }
+
+        public int getFailedPage() {
+            return failedPage;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        // True when the last page was reached and no page failed
+        public boolean isComplete() {
+            return failedPage < 0 && lastPage > 0;
+        }
+
+        @Override
+        public String toString() {
+            return pagesFetched + " pages, " + products + " products, " + retries + " retries in " + elapsedMillis + " ms"
+                    + (failedPage > 0 ? ", stopped at failed page " + failedPage : "");
+        }
+    }
+}
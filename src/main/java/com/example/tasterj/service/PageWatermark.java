@@ -0,0 +1,31 @@
+package com.example.tasterj.service;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// The last page of a sync up to which every page has finished. Pages finish out of order, since they are
+// fetched concurrently, so a page past a gap is held until the gap is filled. Not thread-safe.
+class PageWatermark {
+
+    private final Set<Integer> finishedPages = new HashSet<>();
+    private int page;
+
+    PageWatermark(int page) {
+        this.page = page;
+    }
+
+    // Records a finished page and returns the watermark after it
+    int finish(int finishedPage) {
+        if (finishedPage > page) {
+            finishedPages.add(finishedPage);
+        }
+        while (finishedPages.remove(page + 1)) {
+            page++;
+        }
+        return page;
+    }
+
+    int get() {
+        return page;
+    }
+}
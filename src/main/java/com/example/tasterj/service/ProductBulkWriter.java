@@ -0,0 +1,358 @@
+package com.example.tasterj.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.MongoWriteConcernException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Batches write models into unordered bulkWrite calls, with a bounded number of batches in flight
+@Component
+public class ProductBulkWriter {
+
+    // Server errors that say nothing about the document itself, so the same write may succeed on a retry:
+    // host unreachable or not found, network timeout, shutdown, step-down, time limit, socket errors and
+    // the not-primary and recovering family. Anything else, such as a duplicate key (11000) or a failed
+    // document validation (121), fails the same way every time.
+    private static final Set<Integer> TRANSIENT_CODES = Set.of(
+            6, 7, 89, 91, 189, 262, 9001, 10107, 11600, 11602, 13435, 13436);
+
+    private static final String RETRYABLE_WRITE_ERROR = "RetryableWriteError";
+
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+
+    public ProductBulkWriter(@Value("${ingest.bulk.batch-size}") int batchSize,
+                             @Value("${ingest.bulk.max-in-flight}") int maxInFlight,
+                             @Value("${ingest.bulk.max-retries}") int maxRetries,
+                             @Value("${ingest.bulk.retry-backoff-ms}") long retryBackoffMillis) {
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBackoffMillis = Math.max(0, retryBackoffMillis);
+    }
+
+    public Session openSession(MongoCollection<Document> collection) {
+        return new Session(collection);
+    }
+
+    // One write session per ingest run. add() may be called from several threads.
+    public class Session implements AutoCloseable {
+
+        private final MongoCollection<Document> collection;
+        private final ExecutorService executor = Executors.newFixedThreadPool(maxInFlight);
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<Future<?>> pending = new ArrayList<>();
+        private final Stats stats = new Stats();
+        private List<WriteModel<Document>> buffer = new ArrayList<>();
+        private boolean closed;
+
+        private Session(MongoCollection<Document> collection) {
+            this.collection = collection;
+        }
+
+        public void upsert(Bson filter, Bson update) {
+            add(new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true)));
+        }
+
+        public void add(WriteModel<Document> model) {
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Bulk write session is closed");
+                }
+                buffer.add(model);
+                if (buffer.size() >= batchSize) {
+                    submitBuffer();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Submit the partially filled batch and wait for every batch submitted so far
+        public void flush() {
+            List<Future<?>> toAwait;
+            lock.lock();
+            try {
+                submitBuffer();
+                toAwait = new ArrayList<>(pending);
+                pending.clear();
+            } finally {
+                lock.unlock();
+            }
+
+            for (Future<?> future : toAwait) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for bulk writes", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Bulk write batch failed", e.getCause());
+                }
+            }
+        }
+
+        public Stats getStats() {
+            return stats;
+        }
+
+        @Override
+        public void close() {
+            try {
+                flush();
+            } finally {
+                lock.lock();
+                try {
+                    closed = true;
+                } finally {
+                    lock.unlock();
+                }
+                executor.shutdown();
+                stats.finish();
+            }
+        }
+
+        // Caller must hold the lock. Blocks while maxInFlight batches are already running.
+        private void submitBuffer() {
+            if (buffer.isEmpty()) {
+                return;
+            }
+
+            List<WriteModel<Document>> batch = buffer;
+            buffer = new ArrayList<>(batchSize);
+
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a free bulk write slot", e);
+            }
+
+            pending.removeIf(Future::isDone);
+            try {
+                pending.add(executor.submit(() -> {
+                    try {
+                        writeBatch(batch);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        private void writeBatch(List<WriteModel<Document>> batch) {
+            long start = System.nanoTime();
+            List<WriteModel<Document>> remaining = batch;
+
+            for (int attempt = 0; !remaining.isEmpty(); attempt++) {
+                try {
+                    BulkWriteResult result = collection.bulkWrite(remaining, new BulkWriteOptions().ordered(false));
+                    stats.record(result);
+                    remaining = List.of();
+                } catch (MongoBulkWriteException e) {
+                    // Unordered: everything except the reported indexes was applied
+                    stats.record(e.getWriteResult());
+
+                    boolean retryable = e.hasErrorLabel(RETRYABLE_WRITE_ERROR);
+                    List<WriteModel<Document>> failed = new ArrayList<>();
+                    for (BulkWriteError error : e.getWriteErrors()) {
+                        if (retryable || isTransient(error.getCode())) {
+                            failed.add(remaining.get(error.getIndex()));
+                        } else {
+                            giveUp(1, error.getCode() + " " + error.getMessage());
+                        }
+                    }
+                    remaining = retryOrGiveUp(failed, attempt, e);
+                } catch (MongoException e) {
+                    // The whole batch failed, e.g. a network error
+                    if (isTransient(e)) {
+                        remaining = retryOrGiveUp(remaining, attempt, e);
+                    } else {
+                        giveUp(remaining.size(), e.getMessage());
+                        remaining = List.of();
+                    }
+                }
+            }
+
+            stats.recordBatch(batch.size(), System.nanoTime() - start);
+        }
+
+        private List<WriteModel<Document>> retryOrGiveUp(List<WriteModel<Document>> failed, int attempt, MongoException cause) {
+            if (failed.isEmpty()) {
+                return failed;
+            }
+            if (attempt >= maxRetries) {
+                stats.failed.addAndGet(failed.size());
+                System.err.println("Giving up on " + failed.size() + " documents after " + (attempt + 1) + " attempts: " + cause.getMessage());
+                return List.of();
+            }
+
+            stats.retried.addAndGet(failed.size());
+            try {
+                TimeUnit.MILLISECONDS.sleep(retryBackoffMillis * (1L << attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stats.failed.addAndGet(failed.size());
+                return List.of();
+            }
+            return failed;
+        }
+
+        private void giveUp(int documents, String reason) {
+            stats.failed.addAndGet(documents);
+            System.err.println("Not retrying " + documents + " documents: " + reason);
+        }
+    }
+
+    static boolean isTransient(int code) {
+        return TRANSIENT_CODES.contains(code);
+    }
+
+    // Whether a whole batch failed for a reason a retry can get past
+    static boolean isTransient(MongoException e) {
+        return e.hasErrorLabel(RETRYABLE_WRITE_ERROR)
+                || e instanceof MongoSocketException
+                || e instanceof MongoTimeoutException
+                || e instanceof MongoExecutionTimeoutException
+                || e instanceof MongoNotPrimaryException
+                || e instanceof MongoNodeIsRecoveringException
+                || e instanceof MongoWriteConcernException
+                || isTransient(e.getCode());
+    }
+
+    public static class Stats {
+
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+
+        private final AtomicLong documents = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong matched = new AtomicLong();
+        private final AtomicLong modified = new AtomicLong();
+        private final AtomicLong upserted = new AtomicLong();
+        private final AtomicLong inserted = new AtomicLong();
+        private final AtomicLong deleted = new AtomicLong();
+        private final AtomicLong retried = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong totalBatchNanos = new AtomicLong();
+        private final AtomicLong maxBatchNanos = new AtomicLong();
+
+        private void record(BulkWriteResult result) {
+            if (result == null || !result.wasAcknowledged()) {
+                return;
+            }
+            matched.addAndGet(result.getMatchedCount());
+            modified.addAndGet(result.getModifiedCount());
+            upserted.addAndGet(result.getUpserts().size());
+            inserted.addAndGet(result.getInsertedCount());
+            deleted.addAndGet(result.getDeletedCount());
+        }
+
+        private void recordBatch(int size, long nanos) {
+            documents.addAndGet(size);
+            batches.incrementAndGet();
+            totalBatchNanos.addAndGet(nanos);
+            maxBatchNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        public long getDocuments() {
+            return documents.get();
+        }
+
+        public long getBatches() {
+            return batches.get();
+        }
+
+        public long getMatched() {
+            return matched.get();
+        }
+
+        public long getModified() {
+            return modified.get();
+        }
+
+        public long getUpserted() {
+            return upserted.get();
+        }
+
+        public long getInserted() {
+            return inserted.get();
+        }
+
+        public long getDeleted() {
+            return deleted.get();
+        }
+
+        public long getRetried() {
+            return retried.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        public double getElapsedSeconds() {
+            long end = endNanos != 0 ? endNanos : System.nanoTime();
+            return (end - startNanos) / 1_000_000_000.0;
+        }
+
+        public double getDocsPerSecond() {
+            double seconds = getElapsedSeconds();
+            return seconds > 0 ? documents.get() / seconds : 0.0;
+        }
+
+        public double getAvgBatchMillis() {
+            long count = batches.get();
+            return count > 0 ? totalBatchNanos.get() / (count * 1_000_000.0) : 0.0;
+        }
+
+        public double getMaxBatchMillis() {
+            return maxBatchNanos.get() / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d docs in %d batches (%.1f docs/sec), matched=%d, upserted=%d, modified=%d, inserted=%d, deleted=%d, retried=%d, failed=%d, batch latency avg=%.1fms max=%.1fms",
+                    getDocuments(), getBatches(), getDocsPerSecond(), getMatched(), getUpserted(), getModified(),
+                    getInserted(), getDeleted(), getRetried(), getFailed(), getAvgBatchMillis(), getMaxBatchMillis());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.model.ProductKey;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Version number of the product catalog. Anything derived from products_collection can remember the
+// generation it was built from and treat itself as stale once the catalog has moved on.
+@Component
+public class ProductCatalogGeneration {
+
+    private final AtomicLong generation = new AtomicLong();
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ProductCatalogGeneration(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    public long current() {
+        return generation.get();
+    }
+
+    // Starts a new generation and tells the listeners about it
+    public long advance() {
+        return advance(null);
+    }
+
+    // Same, naming the products whose price changed; null when any price may have changed
+    public long advance(Set<ProductKey> priceChanges) {
+        long next = generation.incrementAndGet();
+        eventPublisher.publishEvent(new ProductCatalogUpdatedEvent(next, Instant.now(), priceChanges));
+        return next;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.model.ProductKey;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.Set;
+
+// Published when products_collection changed, e.g. after a Kassalapp sync wrote products
+@Getter
+public class ProductCatalogUpdatedEvent {
+
+    private final long generation;
+    private final Instant updatedAt;
+    // The products whose price changed, or null when that is not known and any price may have changed
+    private final Set<ProductKey> priceChanges;
+
+    public ProductCatalogUpdatedEvent(long generation, Instant updatedAt) {
+        this(generation, updatedAt, null);
+    }
+
+    public ProductCatalogUpdatedEvent(long generation, Instant updatedAt, Set<ProductKey> priceChanges) {
+        this.generation = generation;
+        this.updatedAt = updatedAt;
+        this.priceChanges = priceChanges;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.model.ProductKey;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-run change detection: compares a content hash of each fetched product with the hash stored on its
+// (ean, store.code) document, so unchanged products can be skipped
+public class ProductChangeDetector {
+
+    public static final String HASH_FIELD = "content_hash";
+
+    public enum Change {
+        NEW,
+        // Content changed and the price is new, or there was no stored hash to compare with
+        PRICE_CHANGED,
+        CHANGED,
+        UNCHANGED;
+
+        public boolean isPriceObservation() {
+            return this == NEW || this == PRICE_CHANGED;
+        }
+    }
+
+    private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final Set<ProductKey> priceChangedKeys = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong newProducts = new AtomicLong();
+    private final AtomicLong changedProducts = new AtomicLong();
+    private final AtomicLong unchangedProducts = new AtomicLong();
+    private final AtomicLong priceChanges = new AtomicLong();
+
+    ProductChangeDetector() {
+    }
+
+    // Loads the stored hash of every product. Documents written before hashing was introduced get an
+    // empty hash, so they count as changed once and are rewritten with a hash.
+    public static ProductChangeDetector load(MongoCollection<Document> collection) {
+        ProductChangeDetector detector = new ProductChangeDetector();
+
+        for (Document document : collection.find()
+                .projection(Projections.include("ean", "store.code", "current_price", HASH_FIELD))
+                .batchSize(5000)) {
+            Document store = document.get("store", Document.class);
+            String ean = document.getString("ean");
+            if (ean == null || store == null || store.getString("code") == null) {
+                continue;
+            }
+            String hash = document.getString(HASH_FIELD);
+            Number price = document.get("current_price", Number.class);
+            detector.remember(ean, store.getString("code"), hash != null ? hash : "", price != null ? price.doubleValue() : 0.0);
+        }
+
+        return detector;
+    }
+
+    // A product as stored before the run
+    void remember(String ean, String storeCode, String hash, double price) {
+        fingerprints.put(key(ean, storeCode), new Fingerprint(hash, price));
+    }
+
+    // Classifies a parsed product and stamps its content hash on it. Thread-safe.
+    public Change classify(Document product) {
+        String hash = contentHash(product);
+        product.append(HASH_FIELD, hash);
+
+        String ean = product.getString("ean");
+        String storeCode = product.get("store", Document.class).getString("code");
+        String key = key(ean, storeCode);
+        seen.add(key);
+
+        double price = product.getDouble("current_price");
+        Fingerprint previous = fingerprints.put(key, new Fingerprint(hash, price));
+        if (previous == null) {
+            newProducts.incrementAndGet();
+            priceChanges.incrementAndGet();
+            priceChangedKeys.add(new ProductKey(ean, storeCode));
+            return Change.NEW;
+        }
+        if (previous.hash.equals(hash)) {
+            unchangedProducts.incrementAndGet();
+            return Change.UNCHANGED;
+        }
+
+        changedProducts.incrementAndGet();
+        if (previous.hash.isEmpty() || Double.compare(previous.price, price) != 0) {
+            priceChanges.incrementAndGet();
+            priceChangedKeys.add(new ProductKey(ean, storeCode));
+            return Change.PRICE_CHANGED;
+        }
+        return Change.CHANGED;
+    }
+
+    public long getNewProducts() {
+        return newProducts.get();
+    }
+
+    public long getChangedProducts() {
+        return changedProducts.get();
+    }
+
+    public long getUnchangedProducts() {
+        return unchangedProducts.get();
+    }
+
+    public long getPriceChanges() {
+        return priceChanges.get();
+    }
+
+    // New products and products whose price changed in this run, e.g. to reprice only the recipes using them
+    public Set<ProductKey> getPriceChangedKeys() {
+        return priceChangedKeys;
+    }
+
+    // Products stored before the run that were not returned by the API. Only meaningful after a run
+    // that covered every page in this process.
+    public long getRemovedProducts() {
+        return fingerprints.size() - seen.size();
+    }
+
+    private static class Fingerprint {
+
+        private final String hash;
+        private final double price;
+
+        private Fingerprint(String hash, double price) {
+            this.hash = hash;
+            this.price = price;
+        }
+    }
+
+    private static String key(String ean, String storeCode) {
+        return ean + '\u0000' + storeCode;
+    }
+
+    private static String contentHash(Document product) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return HexFormat.of().formatHex(digest.digest(product.toJson().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
@@ -1,28 +1,25 @@
 package com.example.tasterj.service;
 
+import com.example.tasterj.model.IngestCheckpoint;
+import com.example.tasterj.repository.IngestCheckpointRepository;
+import com.example.tasterj.repository.ProductPriceHistoryRepository;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
-import com.example.tasterj.model.Product;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.Updates;
 import org.bson.Document;
-import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
-import org.springframework.http.*;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
-import com.fasterxml.jackson.core.type.TypeReference;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class ProductDataService {
@@ -30,16 +27,40 @@ public class ProductDataService {
     @Autowired
     private MongoClient mongoClient;
 
-    @Value("${kassalapp.api}")
-    private String API_KEY;
+    @Autowired
+    private ProductBulkWriter productBulkWriter;
+
+    @Autowired
+    private KassalappProductFetcher kassalappProductFetcher;
+
+    @Autowired
+    private IngestCheckpointRepository ingestCheckpointRepository;
+
+    @Autowired
+    private ProductPriceHistoryRepository productPriceHistoryRepository;
+
+    @Autowired
+    private ProductIdMigration productIdMigration;
+
+    @Autowired
+    private ProductCatalogGeneration productCatalogGeneration;
 
     @Value("${fetch.on.startup}")
     private boolean fetchOnStartup;
 
-    private static final String PRODUCT_URL = "https://kassal.app/api/v1/products";
-    private static final int RATE_LIMIT = 60;
+    @Value("${ingest.checkpoint.interval-pages}")
+    private int checkpointIntervalPages;
+
+    @Value("${ingest.checkpoint.max-age-hours}")
+    private long checkpointMaxAgeHours;
+
+    private static final String SYNC_NAME = "kassalapp-products";
+
+    private final AtomicBoolean syncRunning = new AtomicBoolean(false);
+
+    @Value("${mongodb.database}")
+    private String databaseName;
 
-    private final String databaseName = "products";
     private final String collectionName = "products_collection";
 
     // On startup, fetch and save products if fetchOnStartup is true
@@ -57,126 +78,239 @@ public class ProductDataService {
         fetchAndSaveProducts();
     }
 
-    // Fetch products and save to MongoDB
+    // Fetch products and save to MongoDB, resuming an interrupted run from its checkpoint
     public void fetchAndSaveProducts() {
+        if (!syncRunning.compareAndSet(false, true)) {
+            System.out.println("Product sync already running, skipping.");
+            return;
+        }
+
         try {
-            RestTemplate restTemplate = new RestTemplate();
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + API_KEY);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            boolean hasMoreProducts = true;
-            int currentPage = 1;
-
-            while (hasMoreProducts) {
-                List<Product> allProducts = new ArrayList<>();
-
-                for (int i = 0; i < RATE_LIMIT && hasMoreProducts; i++, currentPage++) {
-                    String productUrl = PRODUCT_URL + "?page=" + currentPage + "&size=100";
-                    ResponseEntity<String> response = restTemplate.exchange(productUrl, HttpMethod.GET, entity, String.class);
-
-                    if (response.getStatusCode() == HttpStatus.OK) {
-                        String productsJson = response.getBody();
-                        List<Product> products = parseProducts(productsJson);
-
-                        if (!products.isEmpty()) {
-                            allProducts.addAll(products);
-                        }
-
-                        if (products.size() < 100) {
-                            hasMoreProducts = false;
-                        }
-                    } else {
-                        System.err.println("Failed to fetch page " + currentPage + ": " + response.getStatusCode());
-                        hasMoreProducts = false;
-                    }
-                }
+            MongoCollection<Document> collection = mongoClient.getDatabase(databaseName).getCollection(collectionName);
+            IngestCheckpoint checkpoint = startOrResumeRun();
+            boolean resumed = checkpoint.getLastPage() > 0;
+
+            ProductChangeDetector changeDetector = ProductChangeDetector.load(collection);
+            productPriceHistoryRepository.ensureCollections();
 
-                // Save/Update all products for the current batch
-                if (!allProducts.isEmpty()) {
-                    saveProductsToMongoDB(allProducts);
+            try (ProductBulkWriter.Session session = productBulkWriter.openSession(collection);
+                 ProductBulkWriter.Session historySession = productBulkWriter.openSession(productPriceHistoryRepository.getHistoryCollection());
+                 ProductBulkWriter.Session dailySession = productBulkWriter.openSession(productPriceHistoryRepository.getDailyCollection())) {
+                SyncRun run = new SyncRun(checkpoint, changeDetector, session, historySession, dailySession);
+
+                // Pages are fetched concurrently within the rate limit and written as they arrive
+                KassalappProductFetcher.FetchResult result = kassalappProductFetcher.fetchAll(checkpoint.getLastPage() + 1, run);
+
+                run.flush();
+                run.updateCounts();
+
+                // Even an incomplete run may have written products, so caches must not keep serving the old ones.
+                // The price changes of an interrupted attempt were not seen by this process, so a resumed run
+                // cannot name every changed price.
+                if (session.getStats().getDocuments() > 0) {
+                    productCatalogGeneration.advance(resumed ? null : Set.copyOf(changeDetector.getPriceChangedKeys()));
                 }
 
-                // If there are more products, pause for 1 minute to respect rate limits
-                if (hasMoreProducts) {
-                    System.out.println("Pausing for 1 minute to respect rate limits...");
-                    TimeUnit.MINUTES.sleep(1);
+                if (result.isComplete()) {
+                    // Removed products can only be told apart when this process saw every page
+                    checkpoint.setRemovedProducts(resumed ? -1 : changeDetector.getRemovedProducts());
+                    checkpoint.setLastPage(result.getLastPage());
+                    checkpoint.setStatus(IngestCheckpoint.COMPLETED);
+                    checkpoint.setCompletedAt(Instant.now());
+                    ingestCheckpointRepository.save(checkpoint);
+
+                    System.out.println("All products fetched and saved to MongoDB (run " + checkpoint.getRunId() + "): "
+                            + checkpoint.getNewProducts() + " new, "
+                            + checkpoint.getChangedProducts() + " changed, "
+                            + checkpoint.getUnchangedProducts() + " unchanged, "
+                            + (resumed ? "unknown" : String.valueOf(checkpoint.getRemovedProducts())) + " removed, "
+                            + changeDetector.getPriceChanges() + " price observations recorded; "
+                            + result + "; " + session.getStats());
+                } else {
+                    run.saveCheckpoint();
+                    System.err.println("Product sync did not complete, will resume after page " + checkpoint.getLastPage()
+                            + ": " + result + "; " + session.getStats());
                 }
             }
-
-            System.out.println("All products fetched and saved to MongoDB.");
         } catch (Exception e) {
             e.printStackTrace();
             System.err.println("Error fetching or saving products: " + e.getMessage());
+        } finally {
+            syncRunning.set(false);
         }
     }
 
-    // Save or update products in MongoDB
-    private void saveProductsToMongoDB(List<Product> products) {
-        MongoDatabase database = mongoClient.getDatabase(databaseName);
-        MongoCollection<Product> collection = database.getCollection(collectionName, Product.class);
-
-        for (Product product : products) {
-            Document filter = new Document("ean", product.getEan()).append("store.code", product.getStore().getCode());
-
-            Document update = new Document("$set", new Document("name", product.getName())
-                    .append("brand", product.getBrand())
-                    .append("vendor", product.getVendor())
-                    .append("url", product.getUrl())
-                    .append("image", product.getImage())
-                    .append("category", product.getCategory())
-                    .append("description", product.getDescription())
-                    .append("current_price", product.getCurrentPrice())
-                    .append("current_unit_price", product.getCurrentUnitPrice())
-                    .append("weight", product.getWeight())
-                    .append("weight_unit", product.getWeightUnit())
-                    .append("store", product.getStore()));
-
-            collection.updateOne(filter, update, new com.mongodb.client.model.UpdateOptions().upsert(true));
+    private IngestCheckpoint startOrResumeRun() {
+        Optional<IngestCheckpoint> existing = ingestCheckpointRepository.findById(SYNC_NAME);
+
+        if (existing.isPresent()) {
+            IngestCheckpoint checkpoint = existing.get();
+            boolean interrupted = IngestCheckpoint.RUNNING.equals(checkpoint.getStatus());
+            boolean recent = checkpoint.getUpdatedAt() != null
+                    && checkpoint.getUpdatedAt().isAfter(Instant.now().minus(Duration.ofHours(checkpointMaxAgeHours)));
+
+            if (interrupted && recent) {
+                System.out.println("Resuming product sync run " + checkpoint.getRunId() + " after page " + checkpoint.getLastPage());
+                return checkpoint;
+            }
         }
 
-        System.out.println(products.size() + " products saved/updated in MongoDB.");
+        IngestCheckpoint checkpoint = new IngestCheckpoint();
+        checkpoint.setId(SYNC_NAME);
+        checkpoint.setRunId(UUID.randomUUID().toString());
+        checkpoint.setStatus(IngestCheckpoint.RUNNING);
+        checkpoint.setLastPage(0);
+        checkpoint.setStartedAt(Instant.now());
+        ingestCheckpointRepository.save(checkpoint);
+        return checkpoint;
     }
 
-    // Parse products from the API response
-    private List<Product> parseProducts(String productsJson) {
-        ObjectMapper objectMapper = new ObjectMapper();
-        try {
-            JsonNode root = objectMapper.readTree(productsJson);
-            JsonNode dataNode = root.get("data");
-
-            if (dataNode != null && dataNode.isArray()) {
-                return objectMapper.convertValue(dataNode, new TypeReference<List<Product>>() {});
-            } else {
-                System.err.println("No 'data' field found or it's not an array.");
-                return new ArrayList<>();
+    // Writes new and changed products, and advances the checkpoint over the contiguous prefix of finished pages
+    private class SyncRun implements KassalappProductFetcher.PageHandler {
+
+        private final IngestCheckpoint checkpoint;
+        private final ProductChangeDetector changeDetector;
+        private final ProductBulkWriter.Session session;
+        private final ProductBulkWriter.Session historySession;
+        private final ProductBulkWriter.Session dailySession;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long previousNew;
+        private final long previousChanged;
+        private final long previousUnchanged;
+        private final PageWatermark watermark;
+        private boolean holding;
+
+        private SyncRun(IngestCheckpoint checkpoint, ProductChangeDetector changeDetector, ProductBulkWriter.Session session,
+                        ProductBulkWriter.Session historySession, ProductBulkWriter.Session dailySession) {
+            this.checkpoint = checkpoint;
+            this.changeDetector = changeDetector;
+            this.session = session;
+            this.historySession = historySession;
+            this.dailySession = dailySession;
+            this.watermark = new PageWatermark(checkpoint.getLastPage());
+
+            // Counts carried over from an interrupted attempt of the same run
+            this.previousNew = checkpoint.getNewProducts();
+            this.previousChanged = checkpoint.getChangedProducts();
+            this.previousUnchanged = checkpoint.getUnchangedProducts();
+        }
+
+        @Override
+        public void onProduct(Document product) {
+            ProductChangeDetector.Change change = changeDetector.classify(product);
+            // The parser reads a missing price as 0, which is no price to record
+            boolean priced = product.getDouble("current_price") > 0;
+
+            // Every product seen goes into its day, unchanged ones included, so the daily series has a point
+            // for each day the product was listed and week and month averages weigh days, not price changes
+            if (priced) {
+                saveDailyPrice(product);
+            }
+            if (change == ProductChangeDetector.Change.UNCHANGED) {
+                return;
+            }
+
+            saveProductToMongoDB(product, session);
+            if (priced && change.isPriceObservation()) {
+                savePriceObservation(product);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return new ArrayList<>();
         }
-    }
 
-    public void migrateIdsToObjectId() {
-        MongoDatabase database = mongoClient.getDatabase(databaseName);
-        MongoCollection<Document> collection = database.getCollection(collectionName);
+        // Record a price change in the time-series collection
+        private void savePriceObservation(Document product) {
+            String ean = product.getString("ean");
+            String storeCode = product.get("store", Document.class).getString("code");
+            double price = product.getDouble("current_price");
+            double unitPrice = product.getDouble("current_unit_price");
+
+            historySession.add(productPriceHistoryRepository.historyInsert(ean, storeCode, price, unitPrice, Instant.now()));
+        }
 
-        // Find all documents where _id is a string
-        List<Document> productsWithStringIds = collection.find(Filters.type("_id", "string")).into(new ArrayList<>());
+        // Fold the price seen today into the product's daily bucket
+        private void saveDailyPrice(Document product) {
+            String ean = product.getString("ean");
+            String storeCode = product.get("store", Document.class).getString("code");
+            double price = product.getDouble("current_price");
 
-        for (Document product : productsWithStringIds) {
-            String stringId = product.getString("_id");
+            dailySession.add(productPriceHistoryRepository.dailyUpsert(ean, storeCode, price, Instant.now()));
+        }
 
-            // Generate a new ObjectId from the string _id
-            ObjectId objectId = new ObjectId();
+        private void flush() {
+            session.flush();
+            historySession.flush();
+            dailySession.flush();
+        }
 
-            // Update the document to set the new ObjectId as _id
-            collection.updateOne(Filters.eq("_id", stringId), Updates.set("_id", objectId));
+        @Override
+        public void onPageComplete(int page, int elements) {
+            lock.lock();
+            try {
+                int finished = watermark.finish(page);
+                if (!holding && finished - checkpoint.getLastPage() >= checkpointIntervalPages) {
+                    saveCheckpoint();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
 
-            // You can also update the rest of the document here if needed
-            System.out.println("Updated product _id from string to ObjectId: " + objectId.toHexString());
+        // Flushes first, so every page up to the watermark is durably written before it is recorded.
+        // Writes are batched across pages, so a document given up on cannot be traced back to its page:
+        // once any was, the checkpoint stays where it is and a resumed run fetches those pages again.
+        private void saveCheckpoint() {
+            lock.lock();
+            try {
+                int page = watermark.get();
+                flush();
+                long failed = failedDocuments();
+                if (failed > 0) {
+                    if (!holding) {
+                        holding = true;
+                        System.err.println("Product sync gave up on " + failed + " documents, holding the checkpoint at page "
+                                + checkpoint.getLastPage() + " instead of " + page);
+                    }
+                    return;
+                }
+                checkpoint.setLastPage(page);
+                updateCounts();
+                ingestCheckpointRepository.save(checkpoint);
+            } finally {
+                lock.unlock();
+            }
         }
 
-        System.out.println("Migration of string _id to ObjectId completed.");
+        private long failedDocuments() {
+            return session.getStats().getFailed() + historySession.getStats().getFailed() + dailySession.getStats().getFailed();
+        }
+
+        private void updateCounts() {
+            checkpoint.setNewProducts(previousNew + changeDetector.getNewProducts());
+            checkpoint.setChangedProducts(previousChanged + changeDetector.getChangedProducts());
+            checkpoint.setUnchangedProducts(previousUnchanged + changeDetector.getUnchangedProducts());
+        }
+    }
+
+    // Queue an upsert for a parsed product document on the bulk write session
+    private void saveProductToMongoDB(Document product, ProductBulkWriter.Session session) {
+        Document filter = new Document("ean", product.getString("ean"))
+                .append("store.code", product.get("store", Document.class).getString("code"));
+
+        session.upsert(filter, new Document("$set", product));
+    }
+
+    // Runs the string _id migration until it has completed once, then skips it
+    public void migrateIdsToObjectId() {
+        if (productIdMigration.isCompleted()) {
+            return;
+        }
+
+        try {
+            productIdMigration.run();
+            // Products now have new ids
+            productCatalogGeneration.advance();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Error migrating product ids, will resume on the next run: " + e.getMessage());
+        }
     }
 }
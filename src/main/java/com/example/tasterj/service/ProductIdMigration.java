@@ -0,0 +1,106 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.repository.MigrationStateRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.mongodb.client.model.Filters.*;
+
+// Moves products with a string _id to an ObjectId _id. _id is immutable, so each document is copied
+// under a new id and the original is deleted, one batch at a time.
+@Component
+public class ProductIdMigration {
+
+    public static final String MIGRATION_ID = "products-string-id-to-objectid";
+
+    private static final String LEGACY_ID_FIELD = "legacy_id";
+
+    private final MongoCollection<Document> collection;
+    private final MigrationStateRepository migrationStateRepository;
+    private final int batchSize;
+
+    public ProductIdMigration(MongoClient mongoClient,
+                              @Value("${mongodb.database}") String databaseName,
+                              MigrationStateRepository migrationStateRepository,
+                              @Value("${migration.product-ids.batch-size}") int batchSize) {
+        this.collection = mongoClient.getDatabase(databaseName).getCollection("products_collection");
+        this.migrationStateRepository = migrationStateRepository;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public boolean isCompleted() {
+        return migrationStateRepository.isCompleted(MIGRATION_ID);
+    }
+
+    // Streams the remaining string-_id documents with a cursor. Migrated originals are deleted, so an
+    // interrupted run resumes simply by running again.
+    public void run() {
+        long startNanos = System.nanoTime();
+        long previouslyMigrated = migrationStateRepository.getMigratedCount(MIGRATION_ID);
+        long migrated = 0;
+        long batches = 0;
+
+        // Lets a batch find copies an interrupted attempt inserted before it could delete the originals
+        collection.createIndex(Indexes.ascending(LEGACY_ID_FIELD), new IndexOptions().sparse(true).name(LEGACY_ID_FIELD));
+
+        try (MongoCursor<Document> cursor = collection.find(type("_id", BsonType.STRING)).batchSize(batchSize).iterator()) {
+            List<Document> batch = new ArrayList<>(batchSize);
+
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= batchSize || !cursor.hasNext()) {
+                    migrateBatch(batch);
+                    migrated += batch.size();
+                    batches++;
+                    batch.clear();
+
+                    migrationStateRepository.recordProgress(MIGRATION_ID, previouslyMigrated + migrated, batches,
+                            docsPerSecond(migrated, startNanos));
+                }
+            }
+        }
+
+        double docsPerSecond = docsPerSecond(migrated, startNanos);
+        migrationStateRepository.markCompleted(MIGRATION_ID, previouslyMigrated + migrated, batches, docsPerSecond);
+        collection.dropIndex(LEGACY_ID_FIELD);
+
+        System.out.printf("Migration of string _id to ObjectId completed: %d documents in %d batches (%.1f docs/sec).%n",
+                migrated, batches, docsPerSecond);
+    }
+
+    private void migrateBatch(List<Document> batch) {
+        List<String> legacyIds = new ArrayList<>(batch.size());
+        List<Document> copies = new ArrayList<>(batch.size());
+
+        for (Document original : batch) {
+            String legacyId = original.getString("_id");
+            legacyIds.add(legacyId);
+
+            Document copy = new Document(original);
+            copy.put("_id", new ObjectId());
+            copy.put(LEGACY_ID_FIELD, legacyId);
+            copies.add(copy);
+        }
+
+        collection.deleteMany(and(in(LEGACY_ID_FIELD, legacyIds), type("_id", BsonType.OBJECT_ID)));
+        collection.insertMany(copies, new InsertManyOptions().ordered(false));
+        collection.deleteMany(in("_id", legacyIds));
+    }
+
+    private double docsPerSecond(long documents, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return seconds > 0 ? documents / seconds : 0.0;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.tasterj.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.RawBsonDocument;
+
+import java.io.IOException;
+
+// Writes stored products as the JSON the product endpoints return, straight from the raw BSON Mongo sent,
+// without a Product or map in between. The shape and defaults are those of ProductCodec: fields missing
+// from the document are written with their defaults after the ones present, store and category only
+// when the document has them.
+public final class ProductJsonWriter {
+
+    private static final String[] STRING_FIELDS = {"brand", "vendor", "url", "image", "description", "weight_unit"};
+    private static final String[] NUMBER_FIELDS = {"current_price", "current_unit_price", "weight"};
+
+    private ProductJsonWriter() {
+    }
+
+    public static void write(RawBsonDocument document, JsonGenerator json) throws IOException {
+        try (BsonReader reader = document.asBsonReader()) {
+            write(reader, json);
+        }
+    }
+
+    public static void write(BsonReader reader, JsonGenerator json) throws IOException {
+        // One bit per scalar field, set once written: id, ean, name, then STRING_FIELDS, then NUMBER_FIELDS
+        int written = 0;
+
+        json.writeStartObject();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String field = reader.readName();
+            switch (field) {
+                case "_id" -> {
+                    json.writeFieldName("id");
+                    writeId(reader, json);
+                    written |= 1;
+                }
+                case "ean" -> {
+                    json.writeFieldName("ean");
+                    writeString(reader, json, null);
+                    written |= 1 << 1;
+                }
+                case "name" -> {
+                    json.writeFieldName("name");
+                    writeString(reader, json, null);
+                    written |= 1 << 2;
+                }
+                case "store" -> writeStore(reader, json);
+                case "category" -> writeCategories(reader, json);
+                default -> {
+                    int bit = bitOf(field);
+                    if (bit < 0 || (written & (1 << bit)) != 0) {
+                        reader.skipValue();
+                    } else {
+                        json.writeFieldName(field);
+                        if (bit < 3 + STRING_FIELDS.length) {
+                            writeString(reader, json, "");
+                        } else {
+                            writeNumber(reader, json);
+                        }
+                        written |= 1 << bit;
+                    }
+                }
+            }
+        }
+        reader.readEndDocument();
+
+        if ((written & 1) == 0) {
+            json.writeNullField("id");
+        }
+        if ((written & (1 << 1)) == 0) {
+            json.writeNullField("ean");
+        }
+        if ((written & (1 << 2)) == 0) {
+            json.writeNullField("name");
+        }
+        for (int i = 0; i < STRING_FIELDS.length; i++) {
+            if ((written & (1 << (3 + i))) == 0) {
+                json.writeStringField(STRING_FIELDS[i], "");
+            }
+        }
+        for (int i = 0; i < NUMBER_FIELDS.length; i++) {
+            if ((written & (1 << (3 + STRING_FIELDS.length + i))) == 0) {
+                json.writeNumberField(NUMBER_FIELDS[i], 0.0);
+            }
+        }
+        json.writeEndObject();
+    }
+
+    private static int bitOf(String field) {
+        for (int i = 0; i < STRING_FIELDS.length; i++) {
+            if (STRING_FIELDS[i].equals(field)) {
+                return 3 + i;
+            }
+        }
+        for (int i = 0; i < NUMBER_FIELDS.length; i++) {
+            if (NUMBER_FIELDS[i].equals(field)) {
+                return 3 + STRING_FIELDS.length + i;
+            }
+        }
+        return -1;
+    }
+
+    private static void writeId(BsonReader reader, JsonGenerator json) throws IOException {
+        switch (reader.getCurrentBsonType()) {
+            case OBJECT_ID -> json.writeString(reader.readObjectId().toHexString());
+            case STRING -> json.writeString(reader.readString());
+            default -> {
+                reader.skipValue();
+                json.writeNull();
+            }
+        }
+    }
+
+    private static void writeString(BsonReader reader, JsonGenerator json, String missing) throws IOException {
+        if (reader.getCurrentBsonType() == BsonType.STRING) {
+            json.writeString(reader.readString());
+            return;
+        }
+        reader.skipValue();
+        if (missing != null) {
+            json.writeString(missing);
+        } else {
+            json.writeNull();
+        }
+    }
+
+    // Always as a double, like the double fields of Product
+    private static void writeNumber(BsonReader reader, JsonGenerator json) throws IOException {
+        switch (reader.getCurrentBsonType()) {
+            case DOUBLE -> json.writeNumber(reader.readDouble());
+            case INT32 -> json.writeNumber((double) reader.readInt32());
+            case INT64 -> json.writeNumber((double) reader.readInt64());
+            case DECIMAL128 -> json.writeNumber(reader.readDecimal128().doubleValue());
+            default -> {
+                reader.skipValue();
+                json.writeNumber(0.0);
+            }
+        }
+    }
+
+    private static void writeStore(BsonReader reader, JsonGenerator json) throws IOException {
+        if (reader.getCurrentBsonType() != BsonType.DOCUMENT) {
+            reader.skipValue();
+            return;
+        }
+
+        boolean name = false;
+        boolean code = false;
+        boolean url = false;
+        boolean logo = false;
+
+        json.writeObjectFieldStart("store");
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String field = reader.readName();
+            boolean wanted = switch (field) {
+                case "name" -> !name && (name = true);
+                case "code" -> !code && (code = true);
+                case "url" -> !url && (url = true);
+                case "logo" -> !logo && (logo = true);
+                default -> false;
+            };
+            if (wanted) {
+                json.writeFieldName(field);
+                writeString(reader, json, "");
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+
+        if (!name) {
+            json.writeStringField("name", "");
+        }
+        if (!code) {
+            json.writeStringField("code", "");
+        }
+        if (!url) {
+            json.writeStringField("url", "");
+        }
+        if (!logo) {
+            json.writeStringField("logo", "");
+        }
+        json.writeEndObject();
+    }
+
+    // Written only when there is at least one category, as the endpoints always did
+    private static void writeCategories(BsonReader reader, JsonGenerator json) throws IOException {
+        if (reader.getCurrentBsonType() != BsonType.ARRAY) {
+            reader.skipValue();
+            return;
+        }
+
+        boolean started = false;
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.getCurrentBsonType() != BsonType.DOCUMENT) {
+                reader.skipValue();
+                continue;
+            }
+            if (!started) {
+                json.writeArrayFieldStart("category");
+                started = true;
+            }
+
+            int id = 0;
+            int depth = 0;
+            String name = "";
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                String field = reader.readName();
+                if ("id".equals(field) && reader.getCurrentBsonType() == BsonType.INT32) {
+                    id = reader.readInt32();
+                } else if ("depth".equals(field) && reader.getCurrentBsonType() == BsonType.INT32) {
+                    depth = reader.readInt32();
+                } else if ("name".equals(field) && reader.getCurrentBsonType() == BsonType.STRING) {
+                    name = reader.readString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+
+            json.writeStartObject();
+            json.writeNumberField("id", id);
+            json.writeNumberField("depth", depth);
+            json.writeStringField("name", name);
+            json.writeEndObject();
+        }
+        reader.readEndArray();
+
+        if (started) {
+            json.writeEndArray();
+        }
+    }
+}
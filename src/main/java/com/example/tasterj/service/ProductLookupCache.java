@@ -0,0 +1,174 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.model.Product;
+import com.example.tasterj.model.ProductKey;
+import com.example.tasterj.repository.ProductRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+// Decoded products by (ean, storeCode) in front of ProductRepository.findByEanAndStoreCode.
+// Misses are cached as well, so ingredients pointing at delisted products do not hit Mongo on every read.
+@Component
+public class ProductLookupCache {
+
+    private final ProductRepository productRepository;
+    private final ProductCatalogGeneration catalogGeneration;
+    private final Cache<ProductKey, Entry> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleGenerations = new LongAdder();
+
+    public ProductLookupCache(ProductRepository productRepository,
+                              ProductCatalogGeneration catalogGeneration,
+                              @Value("${product.cache.max-size}") long maxSize,
+                              @Value("${product.cache.ttl-minutes}") long ttlMinutes) {
+        this.productRepository = productRepository;
+        this.catalogGeneration = catalogGeneration;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+    }
+
+    public Optional<Product> findByEanAndStoreCode(String ean, String storeCode) {
+        ProductKey key = new ProductKey(ean, storeCode);
+        long generation = catalogGeneration.current();
+
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.generation == generation) {
+            hits.increment();
+            return entry.product;
+        }
+        if (entry != null) {
+            staleGenerations.increment();
+        }
+
+        misses.increment();
+        // Tagged with the generation read before the lookup; if a sync finishes meanwhile the entry is already stale
+        Optional<Product> product = productRepository.findByEanAndStoreCode(ean, storeCode);
+        cache.put(key, new Entry(generation, product));
+        return product;
+    }
+
+    // Serves what it can from the cache and resolves all the misses with a single repository query
+    public Map<ProductKey, Product> findAll(Collection<ProductKey> keys) {
+        long generation = catalogGeneration.current();
+        Map<ProductKey, Product> products = new HashMap<>();
+        Set<ProductKey> missing = new HashSet<>();
+
+        for (ProductKey key : keys) {
+            if (products.containsKey(key) || missing.contains(key)) {
+                continue;
+            }
+            Entry entry = cache.getIfPresent(key);
+            if (entry != null && entry.generation == generation) {
+                hits.increment();
+                entry.product.ifPresent(product -> products.put(key, product));
+                continue;
+            }
+            if (entry != null) {
+                staleGenerations.increment();
+            }
+            misses.increment();
+            missing.add(key);
+        }
+
+        if (!missing.isEmpty()) {
+            Map<ProductKey, Product> found = productRepository.findByEanAndStoreCodes(missing);
+            for (ProductKey key : missing) {
+                Product product = found.get(key);
+                cache.put(key, new Entry(generation, Optional.ofNullable(product)));
+                if (product != null) {
+                    products.put(key, product);
+                }
+            }
+        }
+        return products;
+    }
+
+    // Prices for price calculation. Cached products answer directly, but misses are read with the price
+    // projection and not cached, since those partial products must not be served to full lookups.
+    public Map<ProductKey, Double> findPrices(Collection<ProductKey> keys) {
+        long generation = catalogGeneration.current();
+        Map<ProductKey, Double> prices = new HashMap<>();
+        Set<ProductKey> missing = new HashSet<>();
+
+        for (ProductKey key : keys) {
+            if (prices.containsKey(key) || missing.contains(key)) {
+                continue;
+            }
+            Entry entry = cache.getIfPresent(key);
+            if (entry != null && entry.generation == generation) {
+                hits.increment();
+                entry.product.ifPresent(product -> prices.put(key, product.getCurrentPrice()));
+            } else {
+                missing.add(key);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            prices.putAll(productRepository.findPricesByEanAndStoreCodes(missing));
+        }
+        return prices;
+    }
+
+    // Entries are also checked against the generation on read, this just frees the memory early
+    @EventListener
+    public void onCatalogUpdated(ProductCatalogUpdatedEvent event) {
+        cache.invalidateAll();
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), staleGenerations.sum(), cache.estimatedSize(),
+                catalogGeneration.current(), cache.stats());
+    }
+
+    private static class Entry {
+
+        private final long generation;
+        private final Optional<Product> product;
+
+        private Entry(long generation, Optional<Product> product) {
+            this.generation = generation;
+            this.product = product;
+        }
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long staleGenerations;
+        private final long evictions;
+        private final long size;
+        private final long generation;
+        private final double hitRate;
+
+        private Stats(long hits, long misses, long staleGenerations, long size, long generation, CacheStats cacheStats) {
+            this.hits = hits;
+            this.misses = misses;
+            this.staleGenerations = staleGenerations;
+            this.evictions = cacheStats.evictionCount();
+            this.size = size;
+            this.generation = generation;
+            this.hitRate = hits + misses > 0 ? (double) hits / (hits + misses) : 0.0;
+        }
+    }
+}
@@ -0,0 +1,742 @@
+package com.example.tasterj.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import lombok.Getter;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// In-memory inverted index over product names, category names, brands, vendors and stores. Search runs entirely
+// against it and Mongo is only asked for the documents of the page being returned.
+//
+// Products are numbered by _id order (their ordinal). Every folded token maps to the sorted ordinals it
+// occurs in, and a query ANDs the matches of its words as bitsets over the ordinals.
+//
+// Words without any containing term are typos or compounds written apart: the word is split into two
+// known terms ("kyllingfilet" -> "kylling" + "filet"), or else matched against the terms within a small
+// edit distance, found through a trigram index over the term dictionary. Every match carries a score
+// (exact term over prefix over substring over fuzzy) and results are ranked by it, then by _id. Scores take
+// few distinct values, so a query keeps one bitset per score instead of a score per product.
+@Component
+public class ProductSearchIndex {
+
+    private static final Bson PROJECTION = Projections.include("name", "brand", "vendor", "category.name", "store.name", "current_price");
+
+    private final MongoCollection<Document> collection;
+    private final ProductCatalogGeneration catalogGeneration;
+    private final boolean enabled;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean(false);
+
+    private volatile Snapshot snapshot;
+
+    public ProductSearchIndex(MongoClient mongoClient,
+                              @Value("${mongodb.database}") String databaseName,
+                              ProductCatalogGeneration catalogGeneration,
+                              @Value("${search.index.enabled}") boolean enabled) {
+        this.collection = mongoClient.getDatabase(databaseName).getCollection("products_collection");
+        this.catalogGeneration = catalogGeneration;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        requestRebuild();
+    }
+
+    @EventListener
+    public void onCatalogUpdated(ProductCatalogUpdatedEvent event) {
+        requestRebuild();
+    }
+
+    // The current index, or null while the first build is still running. Callers fall back to Mongo then.
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Rebuilds in the background. Requests arriving during a build are folded into one more build after it.
+    public void requestRebuild() {
+        if (!enabled) {
+            return;
+        }
+        rebuildRequested.set(true);
+        if (rebuilding.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("product-search-index").start(this::rebuildWhileRequested);
+        }
+    }
+
+    private void rebuildWhileRequested() {
+        try {
+            while (rebuildRequested.getAndSet(false)) {
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    System.err.println("Error building the product search index, search falls back to MongoDB: " + e.getMessage());
+                }
+            }
+        } finally {
+            rebuilding.set(false);
+        }
+        if (rebuildRequested.get()) {
+            requestRebuild();
+        }
+    }
+
+    public void rebuild() {
+        // Read before scanning, so a sync finishing during the scan leaves this snapshot marked as older
+        long generation = catalogGeneration.current();
+        long startNanos = System.nanoTime();
+
+        Snapshot built = Snapshot.build(collection.find()
+                .projection(PROJECTION)
+                .sort(Sorts.ascending("_id"))
+                .batchSize(5000), generation);
+        snapshot = built;
+
+        System.out.printf("Product search index built: %d products, %d terms, generation %d, in %d ms.%n",
+                built.getDocuments(), built.getTerms(), generation, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    public Stats getStats() {
+        return new Stats(enabled, snapshot, rebuilding.get());
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final boolean enabled;
+        private final boolean ready;
+        private final boolean rebuilding;
+        private final int documents;
+        private final int terms;
+        private final long generation;
+        private final long buildMillis;
+        private final Instant builtAt;
+
+        private Stats(boolean enabled, Snapshot snapshot, boolean rebuilding) {
+            this.enabled = enabled;
+            this.ready = snapshot != null;
+            this.rebuilding = rebuilding;
+            this.documents = snapshot != null ? snapshot.getDocuments() : 0;
+            this.terms = snapshot != null ? snapshot.getTerms() : 0;
+            this.generation = snapshot != null ? snapshot.getGeneration() : -1;
+            this.buildMillis = snapshot != null ? snapshot.getBuildMillis() : 0;
+            this.builtAt = snapshot != null ? snapshot.getBuiltAt() : null;
+        }
+    }
+
+    // Scores, in hundredths
+    private static final int EXACT_WEIGHT = 100;
+    private static final int PREFIX_WEIGHT = 80;
+    private static final int CONTAINED_WEIGHT = 60;
+    private static final int FUZZY_WEIGHT = 50;
+    private static final int FUZZY_PREFIX_WEIGHT = 40;
+    private static final int MIN_COMPOUND_PART = 3;
+
+    // Immutable, so searches never block on a rebuild; a new snapshot simply replaces the old one
+    public static final class Snapshot {
+
+        private final Object[] ids;
+        private final String[] terms;
+        private final int[][] termPostings;
+        private final String[] brands;
+        private final int[][] brandPostings;
+        private final String[] vendors;
+        private final int[][] vendorPostings;
+        private final Map<String, int[]> storePostings;
+        private final long[] priced;
+        private final Map<String, int[]> trigramTerms;
+
+        @Getter
+        private final long generation;
+        @Getter
+        private final long buildMillis;
+        @Getter
+        private final Instant builtAt;
+
+        private Snapshot(Object[] ids, String[] terms, int[][] termPostings, String[] brands, int[][] brandPostings,
+                         String[] vendors, int[][] vendorPostings, Map<String, int[]> storePostings, long[] priced,
+                         long generation, long buildMillis) {
+            this.ids = ids;
+            this.terms = terms;
+            this.termPostings = termPostings;
+            this.brands = brands;
+            this.brandPostings = brandPostings;
+            this.vendors = vendors;
+            this.vendorPostings = vendorPostings;
+            this.storePostings = storePostings;
+            this.priced = priced;
+            this.trigramTerms = trigramTerms(terms);
+            this.generation = generation;
+            this.buildMillis = buildMillis;
+            this.builtAt = Instant.now();
+        }
+
+        // Documents must arrive in the order their ordinals should have, i.e. sorted by _id
+        public static Snapshot build(Iterable<Document> documents, long generation) {
+            long startNanos = System.nanoTime();
+            List<Object> ids = new ArrayList<>();
+            Map<String, Postings> terms = new HashMap<>();
+            Map<String, Postings> brands = new HashMap<>();
+            Map<String, Postings> vendors = new HashMap<>();
+            Map<String, Postings> stores = new HashMap<>();
+            Postings priced = new Postings();
+
+            for (Document document : documents) {
+                int ordinal = ids.size();
+                ids.add(document.get("_id"));
+
+                for (String token : SearchText.tokenize(document.getString("name"))) {
+                    terms.computeIfAbsent(token, t -> new Postings()).add(ordinal);
+                }
+                List<Document> categories = document.getList("category", Document.class);
+                if (categories != null) {
+                    for (Document category : categories) {
+                        for (String token : SearchText.tokenize(category.getString("name"))) {
+                            terms.computeIfAbsent(token, t -> new Postings()).add(ordinal);
+                        }
+                    }
+                }
+
+                String brand = document.getString("brand");
+                if (brand != null && !brand.isEmpty()) {
+                    brands.computeIfAbsent(brand.toLowerCase(Locale.ROOT), b -> new Postings()).add(ordinal);
+                }
+                String vendor = document.getString("vendor");
+                if (vendor != null && !vendor.isEmpty()) {
+                    vendors.computeIfAbsent(vendor.toLowerCase(Locale.ROOT), v -> new Postings()).add(ordinal);
+                }
+
+                Document store = document.get("store", Document.class);
+                if (store != null && store.getString("name") != null) {
+                    stores.computeIfAbsent(store.getString("name"), s -> new Postings()).add(ordinal);
+                }
+
+                // The same 1 kr floor the repository applies to products offered for recipes
+                if (document.get("current_price") instanceof Number price && price.doubleValue() >= 1.0) {
+                    priced.add(ordinal);
+                }
+            }
+
+            String[] termArray = sortedKeys(terms);
+            String[] brandArray = sortedKeys(brands);
+            String[] vendorArray = sortedKeys(vendors);
+
+            Map<String, int[]> storePostings = new HashMap<>();
+            stores.forEach((store, postings) -> storePostings.put(store, postings.toArray()));
+
+            long[] pricedBits = new long[(ids.size() + 63) >>> 6];
+            setAll(pricedBits, priced.toArray());
+
+            return new Snapshot(ids.toArray(), termArray, postingsOf(termArray, terms), brandArray, postingsOf(brandArray, brands),
+                    vendorArray, postingsOf(vendorArray, vendors), storePostings, pricedBits, generation,
+                    (System.nanoTime() - startNanos) / 1_000_000);
+        }
+
+        // Term numbers by the trigrams of the term padded as "$$term$", so that the start of a term weighs more
+        private static Map<String, int[]> trigramTerms(String[] terms) {
+            Map<String, Postings> trigrams = new HashMap<>();
+            for (int i = 0; i < terms.length; i++) {
+                for (String trigram : trigrams(terms[i])) {
+                    trigrams.computeIfAbsent(trigram, t -> new Postings()).add(i);
+                }
+            }
+            Map<String, int[]> arrays = new HashMap<>(trigrams.size() * 2);
+            trigrams.forEach((trigram, postings) -> arrays.put(trigram, postings.toArray()));
+            return arrays;
+        }
+
+        private static List<String> trigrams(String term) {
+            String padded = "$$" + term + "$";
+            List<String> trigrams = new ArrayList<>(padded.length() - 2);
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+            return trigrams;
+        }
+
+        private static String[] sortedKeys(Map<String, Postings> postings) {
+            String[] keys = postings.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            return keys;
+        }
+
+        private static int[][] postingsOf(String[] keys, Map<String, Postings> postings) {
+            int[][] arrays = new int[keys.length][];
+            for (int i = 0; i < keys.length; i++) {
+                arrays[i] = postings.get(keys[i]).toArray();
+            }
+            return arrays;
+        }
+
+        public int getDocuments() {
+            return ids.length;
+        }
+
+        public int getTerms() {
+            return terms.length;
+        }
+
+        // Same semantics as ProductRepository.searchFilter: every word is contained in the name or a category
+        // name, the brand (or vendor) contains the given one, and the store is one of the given store names
+        public Matches match(List<String> words, String brandField, String brand, List<String> storeNames) {
+            return match(words, brandField, brand, storeNames, false);
+        }
+
+        // As above, optionally only products priced at 1 kr or more, like ProductRepository.findByNameContaining
+        public Matches match(List<String> words, String brandField, String brand, List<String> storeNames, boolean pricedOnly) {
+            List<Level> levels = null;
+            for (String word : words) {
+                for (String token : SearchText.tokenize(word)) {
+                    for (TermWeights weights : expand(token)) {
+                        levels = combine(levels, levels(weights));
+                        if (levels.isEmpty()) {
+                            // Nothing can match every word
+                            return new Matches(levels, ids);
+                        }
+                    }
+                }
+            }
+
+            long[] filter = null;
+            if (brand != null) {
+                boolean vendor = BrandDictionary.VENDOR_FIELD.equals(brandField);
+                filter = and(filter, containingBits(brand.toLowerCase(Locale.ROOT),
+                        vendor ? vendors : brands, vendor ? vendorPostings : brandPostings));
+            }
+
+            if (storeNames != null && !storeNames.isEmpty()) {
+                long[] bits = new long[bitsetLength()];
+                for (String storeName : storeNames) {
+                    setAll(bits, storePostings.get(storeName));
+                }
+                filter = and(filter, bits);
+            }
+
+            if (pricedOnly) {
+                filter = and(filter, Arrays.copyOf(priced, priced.length));
+            }
+
+            if (levels == null) {
+                // No words to score: one level, in plain _id order
+                if (filter == null) {
+                    filter = new long[bitsetLength()];
+                    for (int ordinal = 0; ordinal < ids.length; ordinal++) {
+                        filter[ordinal >>> 6] |= 1L << ordinal;
+                    }
+                }
+                return new Matches(List.of(new Level(0, filter)), ids);
+            }
+
+            List<Level> filtered = new ArrayList<>(levels.size());
+            for (Level level : levels) {
+                if (filter != null) {
+                    and(level.bits, filter);
+                    level.recount();
+                }
+                if (level.count > 0) {
+                    filtered.add(level);
+                }
+            }
+            return new Matches(filtered, ids);
+        }
+
+        // The terms a query token stands for, as one or more groups that must all match. Usually one group
+        // of the terms containing the token; only when there are none, a compound split or fuzzy terms.
+        private List<TermWeights> expand(String token) {
+            TermWeights containing = containing(token);
+            if (containing.size > 0) {
+                return List.of(containing);
+            }
+            String[] parts = splitCompound(token);
+            if (parts != null) {
+                return List.of(containing(parts[0]), containing(parts[1]));
+            }
+            return List.of(similar(token));
+        }
+
+        // Every term containing the token. The term dictionary is far smaller than the catalog, so scanning
+        // it keeps the unanchored "contains" semantics of the old regex at a fraction of the cost.
+        private TermWeights containing(String token) {
+            TermWeights weights = new TermWeights();
+            for (int i = 0; i < terms.length; i++) {
+                if (terms[i].contains(token)) {
+                    weights.add(i, terms[i].length() == token.length() ? EXACT_WEIGHT
+                            : terms[i].startsWith(token) ? PREFIX_WEIGHT : CONTAINED_WEIGHT);
+                }
+            }
+            return weights;
+        }
+
+        // Two known terms the token is glued from, allowing the linking s or e of Norwegian compounds
+        // ("kyllingfilet" -> "kylling" + "filet", "fiskesuppe" -> "fisk" + "suppe"). Longest first part wins.
+        private String[] splitCompound(String token) {
+            for (int split = token.length() - MIN_COMPOUND_PART; split >= MIN_COMPOUND_PART; split--) {
+                String tail = token.substring(split);
+                if (!isTerm(tail)) {
+                    continue;
+                }
+                String head = token.substring(0, split);
+                if (isTerm(head)) {
+                    return new String[]{head, tail};
+                }
+                char last = head.charAt(head.length() - 1);
+                if ((last == 's' || last == 'e') && head.length() > MIN_COMPOUND_PART && isTerm(head.substring(0, head.length() - 1))) {
+                    return new String[]{head.substring(0, head.length() - 1), tail};
+                }
+            }
+            return null;
+        }
+
+        private boolean isTerm(String value) {
+            return Arrays.binarySearch(terms, value) >= 0;
+        }
+
+        // Terms within the edit budget of the token, or starting with something within it ("kyling" finds
+        // "kyllingfilet"). Candidates must share enough trigrams with the token that they could be within
+        // the budget, since one edit changes at most three trigrams; only those get an edit distance.
+        private TermWeights similar(String token) {
+            TermWeights weights = new TermWeights();
+            int maxEdits = maxEdits(token);
+            if (maxEdits == 0) {
+                return weights;
+            }
+
+            List<String> tokenTrigrams = trigrams(token);
+            int[] shared = new int[terms.length];
+            Postings candidates = new Postings();
+            for (String trigram : new HashSet<>(tokenTrigrams)) {
+                int[] termNumbers = trigramTerms.get(trigram);
+                if (termNumbers == null) {
+                    continue;
+                }
+                for (int term : termNumbers) {
+                    if (shared[term]++ == 0) {
+                        candidates.add(term);
+                    }
+                }
+            }
+
+            // A prefix match also loses the trigram at the end of the token
+            int minShared = Math.max(1, tokenTrigrams.size() - 1 - 3 * maxEdits);
+            for (int c = 0; c < candidates.size; c++) {
+                int term = candidates.values[c];
+                if (shared[term] < minShared) {
+                    continue;
+                }
+                String candidate = terms[term];
+                int edits = SearchText.editDistance(token, candidate, maxEdits);
+                if (edits <= maxEdits) {
+                    weights.add(term, FUZZY_WEIGHT / edits);
+                    continue;
+                }
+                int prefixEdits = maxEdits + 1;
+                for (int length = token.length() - 1; length <= token.length() + 1 && length < candidate.length(); length++) {
+                    prefixEdits = Math.min(prefixEdits, SearchText.editDistance(token, candidate.substring(0, length), maxEdits));
+                }
+                if (prefixEdits <= maxEdits) {
+                    weights.add(term, FUZZY_PREFIX_WEIGHT / prefixEdits);
+                }
+            }
+            return weights;
+        }
+
+        // Short words have too many neighbours to guess at
+        private static int maxEdits(String token) {
+            return token.length() < 4 ? 0 : token.length() < 7 ? 1 : 2;
+        }
+
+        // The documents of the terms, split by the best weight each document has among them. Weights are
+        // visited from the highest down, so the first level setting a document's bit holds its best weight.
+        private List<Level> levels(TermWeights weights) {
+            List<Level> levels = new ArrayList<>();
+            long[] seen = new long[bitsetLength()];
+            int level = Integer.MAX_VALUE;
+            while (true) {
+                int weight = -1;
+                for (int t = 0; t < weights.size; t++) {
+                    if (weights.weights[t] < level && weights.weights[t] > weight) {
+                        weight = weights.weights[t];
+                    }
+                }
+                if (weight < 0) {
+                    return levels;
+                }
+
+                long[] bits = new long[bitsetLength()];
+                for (int t = 0; t < weights.size; t++) {
+                    if (weights.weights[t] != weight) {
+                        continue;
+                    }
+                    for (int ordinal : termPostings[weights.terms[t]]) {
+                        long bit = 1L << ordinal;
+                        if ((seen[ordinal >>> 6] & bit) == 0) {
+                            seen[ordinal >>> 6] |= bit;
+                            bits[ordinal >>> 6] |= bit;
+                        }
+                    }
+                }
+                levels.add(new Level(weight, bits));
+                level = weight;
+            }
+        }
+
+        // The documents in both, by the sum of their scores. Only a handful of levels per word exist, so the
+        // pairwise intersections stay cheap.
+        private List<Level> combine(List<Level> left, List<Level> right) {
+            if (left == null) {
+                return right;
+            }
+            TreeMap<Integer, long[]> sums = new TreeMap<>(Comparator.reverseOrder());
+            for (Level a : left) {
+                for (Level b : right) {
+                    long[] both = null;
+                    for (int i = 0; i < a.bits.length; i++) {
+                        long word = a.bits[i] & b.bits[i];
+                        if (word != 0) {
+                            if (both == null) {
+                                both = sums.computeIfAbsent(a.score + b.score, score -> new long[bitsetLength()]);
+                            }
+                            both[i] |= word;
+                        }
+                    }
+                }
+            }
+            List<Level> combined = new ArrayList<>(sums.size());
+            sums.forEach((score, bits) -> combined.add(new Level(score, bits)));
+            return combined;
+        }
+
+        private long[] containingBits(String value, String[] keys, int[][] postings) {
+            long[] bits = new long[bitsetLength()];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].contains(value)) {
+                    setAll(bits, postings[i]);
+                }
+            }
+            return bits;
+        }
+
+        private int bitsetLength() {
+            return (ids.length + 63) >>> 6;
+        }
+
+        private static void setAll(long[] bits, int[] ordinals) {
+            if (ordinals == null) {
+                return;
+            }
+            for (int ordinal : ordinals) {
+                bits[ordinal >>> 6] |= 1L << ordinal;
+            }
+        }
+
+        private static long[] and(long[] result, long[] bits) {
+            if (result == null) {
+                return bits;
+            }
+            for (int i = 0; i < result.length; i++) {
+                result[i] &= bits[i];
+            }
+            return result;
+        }
+    }
+
+    // The documents of one score, as a bitset over the ordinals
+    private static final class Level {
+
+        private final int score;
+        private final long[] bits;
+        private int count;
+
+        private Level(int score, long[] bits) {
+            this.score = score;
+            this.bits = bits;
+            recount();
+        }
+
+        private void recount() {
+            int count = 0;
+            for (long word : bits) {
+                count += Long.bitCount(word);
+            }
+            this.count = count;
+        }
+
+        private boolean contains(int ordinal) {
+            return ordinal >= 0 && (bits[ordinal >>> 6] & (1L << ordinal)) != 0;
+        }
+    }
+
+    // The ordinals matching a query, ranked by score and then _id: the levels from the highest score down,
+    // each walked in ordinal order. Without scored words there is one level and the order is plain _id order.
+    public static final class Matches {
+
+        private final List<Level> levels;
+        private final Object[] ids;
+        private final int count;
+
+        private Matches(List<Level> levels, Object[] ids) {
+            this.levels = levels;
+            this.ids = ids;
+            int count = 0;
+            for (Level level : levels) {
+                count += level.count;
+            }
+            this.count = count;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        // Cursor for resuming after the given match
+        public SearchCursor cursorAfter(Object id) {
+            int ordinal = ordinalAfter(id) - 1;
+            for (Level level : levels) {
+                if (level.contains(ordinal)) {
+                    return new SearchCursor(id, level.score);
+                }
+            }
+            return new SearchCursor(id, 0);
+        }
+
+        // The _ids of the first matches ranked after the cursor: the rest of the cursor's level from the
+        // binary-searched position of its _id, then the lower levels. No earlier match is visited.
+        public List<Object> after(SearchCursor cursor, int limit) {
+            int low = ordinalAfter(cursor.getLastId());
+            Integer score = cursor.getScore();
+            if (score == null) {
+                // A cursor from a page served by Mongo: resume in the level the product is in now
+                score = cursorAfter(cursor.getLastId()).getScore();
+            }
+
+            List<Object> page = new ArrayList<>(Math.min(limit, count));
+            for (Level level : levels) {
+                if (page.size() >= limit) {
+                    break;
+                }
+                if (level.score < score) {
+                    walk(level.bits, 0, 0, limit, page);
+                } else if (level.score == score) {
+                    walk(level.bits, low, 0, limit, page);
+                }
+            }
+            return page;
+        }
+
+        // The _ids of the matches from offset to offset + limit
+        public List<Object> page(int offset, int limit) {
+            List<Object> page = new ArrayList<>(Math.max(0, Math.min(limit, count - offset)));
+            for (Level level : levels) {
+                if (page.size() >= limit) {
+                    break;
+                }
+                // Skip whole levels while still before the offset
+                if (offset >= level.count) {
+                    offset -= level.count;
+                    continue;
+                }
+                walk(level.bits, 0, offset, limit, page);
+                offset = 0;
+            }
+            return page;
+        }
+
+        // First ordinal whose _id sorts after the given one
+        private int ordinalAfter(Object lastId) {
+            int low = 0;
+            int high = ids.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (SearchCursor.compareIds(ids[mid], lastId) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // Adds the set ordinals from the given one on, after skipping offset of them, until the page is full.
+        // Whole words are skipped while still before the offset.
+        private void walk(long[] bits, int from, int offset, int limit, List<Object> page) {
+            int seen = 0;
+            for (int i = from >>> 6; i < bits.length && page.size() < limit; i++) {
+                long word = bits[i];
+                if (i == from >>> 6) {
+                    // Drop the ordinals before the resume point in its word
+                    word &= -1L << (from & 63);
+                }
+                int bitsInWord = Long.bitCount(word);
+                if (seen + bitsInWord <= offset) {
+                    seen += bitsInWord;
+                    continue;
+                }
+                while (word != 0 && page.size() < limit) {
+                    int ordinal = (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    if (seen++ >= offset) {
+                        page.add(ids[ordinal]);
+                    }
+                }
+            }
+        }
+    }
+
+    // Growable parallel lists of term numbers and the score a match on each term is worth
+    private static final class TermWeights {
+
+        private int[] terms = new int[8];
+        private int[] weights = new int[8];
+        private int size;
+
+        private void add(int term, int weight) {
+            if (size == terms.length) {
+                terms = Arrays.copyOf(terms, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            terms[size] = term;
+            weights[size++] = weight;
+        }
+    }
+
+    // Growable list of ascending ordinals; a document adding the same token twice is stored once
+    private static final class Postings {
+
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int ordinal) {
+            if (size > 0 && values[size - 1] == ordinal) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = ordinal;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
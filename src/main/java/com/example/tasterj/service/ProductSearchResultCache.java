@@ -0,0 +1,175 @@
+package com.example.tasterj.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+// Finished JSON responses of product searches, keyed on the normalised search. A hit is written to the
+// response as is, without touching Mongo or the search index. Entries belong to the catalog generation and
+// search index snapshot they were built from and are only served while both are current; an ingest also
+// drops them all. The cache is bounded by the bytes it holds rather than the number of entries, since a
+// page of 100 products weighs as much as dozens of small ones.
+@Component
+public class ProductSearchResultCache {
+
+    // Key, entry and map overhead per cached page, on top of the JSON itself
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    private static final int TOP_KEYS = 20;
+
+    private final Cache<Key, Page> pages;
+    // Outlives invalidation, so a key's hit rate spans generations
+    private final Cache<Key, KeyStats> keyStats;
+    private final int maxPageSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ProductSearchResultCache(@Value("${search.cache.max-bytes}") long maxBytes,
+                                    @Value("${search.cache.max-page-size}") int maxPageSize,
+                                    @Value("${search.cache.key-stats-size}") long keyStatsSize) {
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, Page page) -> page.weight())
+                .recordStats()
+                .build();
+        this.keyStats = Caffeine.newBuilder().maximumSize(keyStatsSize).build();
+        this.maxPageSize = maxPageSize;
+    }
+
+    // Larger pages are rare and streamed from Mongo instead of being held in memory
+    public boolean caches(int pageSize) {
+        return pageSize <= maxPageSize;
+    }
+
+    // The cached response, an empty cached response when the search found nothing, or null on a miss
+    public byte[] get(Key key, String version) {
+        KeyStats stats = keyStats.get(key, k -> new KeyStats());
+        Page page = pages.getIfPresent(key);
+        if (page != null && page.version.equals(version)) {
+            hits.increment();
+            stats.hits.increment();
+            return page.json;
+        }
+        misses.increment();
+        stats.misses.increment();
+        return null;
+    }
+
+    public void put(Key key, String version, byte[] json) {
+        pages.put(key, new Page(version, json));
+    }
+
+    @EventListener
+    public void onCatalogUpdated(ProductCatalogUpdatedEvent event) {
+        pages.invalidateAll();
+    }
+
+    public Stats getStats() {
+        List<KeyHits> topKeys = new ArrayList<>();
+        keyStats.asMap().forEach((key, stats) -> topKeys.add(new KeyHits(key, stats.hits.sum(), stats.misses.sum())));
+        topKeys.sort(Comparator.comparingLong(KeyHits::getRequests).reversed());
+        return new Stats(hits.sum(), misses.sum(), pages.stats().evictionCount(), pages.estimatedSize(),
+                pages.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L),
+                topKeys.subList(0, Math.min(TOP_KEYS, topKeys.size())));
+    }
+
+    // A search as the results depend on it: words lowercased and single-spaced, stores sorted and
+    // without duplicates (no stores and an empty list both mean every store)
+    @Getter
+    @EqualsAndHashCode
+    @ToString
+    public static class Key {
+
+        private final String query;
+        private final List<String> stores;
+        private final int page;
+        private final String cursor;
+        private final int pageSize;
+        private final boolean includeCount;
+
+        public Key(List<String> words, List<String> stores, int page, SearchCursor after, int pageSize, boolean includeCount) {
+            this.query = String.join(" ", words);
+            this.stores = stores != null ? new ArrayList<>(new TreeSet<>(stores)) : List.of();
+            // A cursor decides the page on its own
+            this.page = after != null ? 0 : page;
+            this.cursor = after != null ? after.encode() : null;
+            this.pageSize = pageSize;
+            this.includeCount = includeCount;
+        }
+    }
+
+    private static class Page {
+
+        private final String version;
+        private final byte[] json;
+
+        private Page(String version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+
+        private int weight() {
+            return ENTRY_OVERHEAD_BYTES + json.length;
+        }
+    }
+
+    private static class KeyStats {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+    }
+
+    @Getter
+    public static class KeyHits {
+
+        private final Key key;
+        private final long hits;
+        private final long misses;
+        private final double hitRate;
+
+        private KeyHits(Key key, long hits, long misses) {
+            this.key = key;
+            this.hits = hits;
+            this.misses = misses;
+            this.hitRate = hits + misses > 0 ? (double) hits / (hits + misses) : 0.0;
+        }
+
+        public long getRequests() {
+            return hits + misses;
+        }
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long size;
+        private final long bytes;
+        private final double hitRate;
+        // The most requested searches since startup
+        private final List<KeyHits> topKeys;
+
+        private Stats(long hits, long misses, long evictions, long size, long bytes, List<KeyHits> topKeys) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.bytes = bytes;
+            this.hitRate = hits + misses > 0 ? (double) hits / (hits + misses) : 0.0;
+            this.topKeys = topKeys;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.tasterj.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mongodb.client.MongoCursor;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+
+// One page of product search results, written as JSON while the products arrive from the Mongo cursor.
+// The query runs before writing starts, so an empty page is known up front; the products themselves are
+// never held, only the raw BSON of the one being written.
+public class ProductSearchResults implements Closeable {
+
+    private final JsonFactory jsonFactory;
+    private final MongoCursor<RawBsonDocument> products;
+    private final int page;
+    private final int offset;
+    private final int pageSize;
+    private final boolean extraDocumentMeansMore;
+    private final Supplier<SearchCountStrategy.Count> totalProducts;
+    // The whole response, when it was already written once and cached
+    private final byte[] cachedJson;
+    private String nextCursor;
+
+    // products holds the page in order. With extraDocumentMeansMore it was read with a limit of one more than the
+    // page, and nextCursor is derived from whether that document arrives; otherwise nextCursor is already known.
+    // totalProducts is null when the count was not asked for, and only evaluated after the products are written.
+    // offset is the number of products before the page, or 0 when it resumes from a cursor.
+    ProductSearchResults(JsonFactory jsonFactory, MongoCursor<RawBsonDocument> products, int page, int offset, int pageSize,
+                         boolean extraDocumentMeansMore, String nextCursor, Supplier<SearchCountStrategy.Count> totalProducts) {
+        this.jsonFactory = jsonFactory;
+        this.products = products;
+        this.page = page;
+        this.offset = offset;
+        this.pageSize = pageSize;
+        this.extraDocumentMeansMore = extraDocumentMeansMore;
+        this.nextCursor = nextCursor;
+        this.totalProducts = totalProducts;
+        this.cachedJson = null;
+    }
+
+    private ProductSearchResults(byte[] json) {
+        this.jsonFactory = null;
+        this.products = null;
+        this.page = 0;
+        this.offset = 0;
+        this.pageSize = 0;
+        this.extraDocumentMeansMore = false;
+        this.totalProducts = null;
+        this.cachedJson = json;
+    }
+
+    static ProductSearchResults empty(JsonFactory jsonFactory, int page) {
+        return new ProductSearchResults(jsonFactory, null, page, 0, 0, false, null, null);
+    }
+
+    // A response written before; empty when that search found no products
+    static ProductSearchResults ofJson(byte[] json) {
+        return new ProductSearchResults(json);
+    }
+
+    // Waits for the first batch of the cursor
+    public boolean isEmpty() {
+        if (cachedJson != null) {
+            return cachedJson.length == 0;
+        }
+        return products == null || !products.hasNext();
+    }
+
+    // The whole response, or an empty array when there are no products; for caching
+    byte[] toJson() throws IOException {
+        if (isEmpty()) {
+            close();
+            return new byte[0];
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return out.toByteArray();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        if (cachedJson != null) {
+            out.write(cachedJson);
+            return;
+        }
+        try (JsonGenerator json = jsonFactory.createGenerator(out)) {
+            json.writeStartObject();
+
+            json.writeArrayFieldStart("products");
+            int written = 0;
+            BsonValue lastId = null;
+            while (products != null && products.hasNext()) {
+                RawBsonDocument document = products.next();
+                // The extra document only tells that another page follows
+                if (extraDocumentMeansMore && written == pageSize) {
+                    nextCursor = new SearchCursor(SearchCursor.idValue(lastId)).encode();
+                    break;
+                }
+                ProductJsonWriter.write(document, json);
+                lastId = document.get("_id");
+                written++;
+            }
+            json.writeEndArray();
+
+            if (totalProducts != null) {
+                // An estimate can fall short of what this very page shows, even to 0 for a selective search
+                SearchCountStrategy.Count count = totalProducts.get()
+                        .atLeast((long) offset + written + (nextCursor != null ? 1 : 0));
+                json.writeNumberField("totalItems", count.getValue());
+                json.writeNumberField("totalPages", pageSize > 0 ? (int) Math.ceil((double) count.getValue() / pageSize) : 0);
+                json.writeBooleanField("approximate", count.isApproximate());
+            }
+            json.writeNumberField("currentPage", page);
+            json.writeStringField("nextCursor", nextCursor);
+            json.writeEndObject();
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (products != null) {
+            products.close();
+        }
+    }
+}
@@ -1,23 +1,44 @@
 package com.example.tasterj.service;
 
 import com.example.tasterj.dto.CreateRecipeDto;
+import com.example.tasterj.dto.PriceHistoryDto;
 import com.example.tasterj.model.Ingredient;
 import com.example.tasterj.model.Product;
+import com.example.tasterj.model.ProductKey;
 import com.example.tasterj.model.Recipe;
+import com.example.tasterj.repository.ProductPriceHistoryRepository;
 import com.example.tasterj.repository.ProductRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Field;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.conversions.Bson;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -26,161 +47,245 @@ public class ProductService {
     @Autowired
     private ProductRepository productRepository;
 
-    private final MongoCollection<Document> collection;
+    @Autowired
+    private ProductPriceHistoryRepository productPriceHistoryRepository;
 
     @Autowired
-    public ProductService(ProductRepository productRepository, MongoClient mongoClient) {
-        this.productRepository = productRepository;
-        this.collection = mongoClient.getDatabase("products").getCollection("products_collection");
-    }
+    private ProductLookupCache productLookupCache;
 
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
 
-    public Map<String, Object> searchProducts(String query, List<String> selectedStores, int page, int pageSize) {
-        if (query == null || query.isEmpty()) {
-            // Handle empty query case
-            Map<String, Object> response = new HashMap<>();
-            response.put("products", Collections.emptyList());
-            response.put("totalItems", 0);
-            response.put("totalPages", 0);
-            response.put("currentPage", page);
-            return response;
-        }
+    @Autowired
+    private BrandDictionary brandDictionary;
 
-        // Step 1: Split query into words
-        String[] words = query.toLowerCase().split("\\s+");
+    @Autowired
+    private SearchCountStrategy searchCountStrategy;
 
-        // Step 2: Generate all possible substrings
-        List<String> substrings = generateSubstrings(words);
+    @Autowired
+    private ProductSearchResultCache searchResultCache;
 
-        // Step 3: Use MongoDB to find brands that match any of the substrings
-        List<Bson> brandFilters = substrings.stream()
-                .map(sub -> Filters.regex("brand", Pattern.compile("^" + Pattern.quote(sub) + "$", Pattern.CASE_INSENSITIVE)))
-                .collect(Collectors.toList());
+    @Autowired
+    private ProductCatalogGeneration catalogGeneration;
 
-        Bson brandQuery = Filters.or(brandFilters);
+    @Autowired
+    private ObjectMapper objectMapper;
 
-        // Find matching brands
-        List<String> matchingBrands = collection.distinct("brand", brandQuery, String.class)
-                .into(new ArrayList<>());
+    // Undecoded BSON, for products that are only passed on as JSON
+    private final MongoCollection<RawBsonDocument> rawCollection;
+    private final int maxMatchCandidates;
+    private final long matchTimeoutMillis;
+    // Shared by all requests, so concurrent imports together stay within the bound
+    private final Semaphore matchPermits;
 
-        // Step 4: Identify the longest matching brand substring
-        String matchingBrand = null;
-        int maxBrandLength = 0;
+    @Autowired
+    public ProductService(ProductRepository productRepository, MongoClient mongoClient, @Value("${mongodb.database}") String databaseName,
+                          @Value("${product.match.max-candidates}") int maxMatchCandidates,
+                          @Value("${product.match.concurrency}") int matchConcurrency,
+                          @Value("${product.match.timeout-ms}") long matchTimeoutMillis) {
+        this.productRepository = productRepository;
+        this.rawCollection = mongoClient.getDatabase(databaseName).getCollection("products_collection", RawBsonDocument.class);
+        this.maxMatchCandidates = maxMatchCandidates;
+        this.matchTimeoutMillis = matchTimeoutMillis;
+        this.matchPermits = new Semaphore(matchConcurrency);
+    }
 
-        for (String brand : matchingBrands) {
-            String brandLower = brand.toLowerCase();
-            if (substrings.contains(brandLower)) {
-                int length = brandLower.split("\\s+").length;
-                if (length > maxBrandLength) {
-                    maxBrandLength = length;
-                    matchingBrand = brand;
-                }
-            }
-        }
 
-        // Step 5: Remove brand words from query words
-        List<String> remainingWords = new ArrayList<>(Arrays.asList(words));
-        if (matchingBrand != null) {
-            String[] brandWords = matchingBrand.toLowerCase().split("\\s+");
-            for (String word : brandWords) {
-                remainingWords.remove(word);
-            }
+    // Pages either by page number or, when after is given, from where the previous page ended. Every response
+    // carries a nextCursor for the page that follows it, or null on the last page. Without includeCount the
+    // response has no totalItems/totalPages, which saves the count query for infinite scrolling.
+    //
+    // The page's query runs here; the returned results then write the products to the response straight from
+    // the Mongo cursor's raw BSON, so memory per request does not grow with the page size.
+    //
+    // Searches whose page fits the result cache are answered from it while the catalog and search index are
+    // unchanged; a miss is written once into the cache and then served from there.
+    public ProductSearchResults searchProducts(String query, List<String> selectedStores, int page, int pageSize,
+                                               SearchCursor after, boolean includeCount) throws IOException {
+        if (query == null || query.isBlank()) {
+            // Handle empty query case
+            return ProductSearchResults.empty(objectMapper.getFactory(), page);
         }
 
-        // Step 6: Create filters that check both product names and categories
-        List<Bson> wordFilters = new ArrayList<>();
+        // Step 1: Split query into words
+        List<String> words = Arrays.asList(query.trim().toLowerCase().split("\\s+"));
+        ProductSearchIndex.Snapshot index = productSearchIndex.getSnapshot();
 
-        for (String word : remainingWords) {
-            List<Bson> orFilters = new ArrayList<>();
-            orFilters.add(Filters.regex("name", Pattern.compile(Pattern.quote(word), Pattern.CASE_INSENSITIVE)));
-            orFilters.add(Filters.regex("category.name", Pattern.compile(Pattern.quote(word), Pattern.CASE_INSENSITIVE)));
-            wordFilters.add(Filters.or(orFilters));
+        if (!searchResultCache.caches(pageSize)) {
+            return searchProducts(words, selectedStores, page, pageSize, after, includeCount, index);
         }
 
-        // Step 7: Combine filters
-        List<Bson> filters = new ArrayList<>();
-
-        if (!wordFilters.isEmpty()) {
-            filters.add(Filters.and(wordFilters));
+        ProductSearchResultCache.Key key = new ProductSearchResultCache.Key(words, selectedStores, page, after, pageSize, includeCount);
+        // Ranking, and so the pages, differ between index snapshots and the Mongo fallback
+        String version = catalogGeneration.current() + ":" + (index != null ? index.getGeneration() : "mongo");
+        byte[] cached = searchResultCache.get(key, version);
+        if (cached != null) {
+            return ProductSearchResults.ofJson(cached);
         }
 
-        if (matchingBrand != null) {
-            filters.add(Filters.regex("brand", Pattern.compile(Pattern.quote(matchingBrand), Pattern.CASE_INSENSITIVE)));
+        byte[] json = searchProducts(words, selectedStores, page, pageSize, after, includeCount, index).toJson();
+        searchResultCache.put(key, version, json);
+        return ProductSearchResults.ofJson(json);
+    }
+
+    private ProductSearchResults searchProducts(List<String> words, List<String> selectedStores, int page, int pageSize,
+                                                SearchCursor after, boolean includeCount, ProductSearchIndex.Snapshot index) {
+        // Step 2: Find the longest brand or vendor named in the query, in memory
+        BrandDictionary.Match brandMatch = brandDictionary.detect(words);
+        String brandField = brandMatch != null ? brandMatch.getField() : null;
+        String matchingBrand = brandMatch != null ? brandMatch.getValue() : null;
+
+        // Step 3: Remove brand words from query words
+        List<String> remainingWords = new ArrayList<>(words);
+        if (brandMatch != null) {
+            remainingWords.subList(brandMatch.getFirstWord(), brandMatch.getLastWord()).clear();
         }
 
-        // Filter by selected stores if applicable
-        if (selectedStores != null && !selectedStores.isEmpty()) {
-            filters.add(Filters.in("store.name", selectedStores));
+        // Step 4: Names or categories must contain every remaining word, within the brand and stores
+        if (index != null) {
+            // Matching and ranking happen in memory, typos included; Mongo only loads the products of the requested page
+            ProductSearchIndex.Matches matches = index.match(remainingWords, brandField, matchingBrand, selectedStores);
+            // One more than the page to tell whether another page follows
+            List<Object> ids = after != null
+                    ? matches.after(after, pageSize + 1)
+                    : matches.page((page - 1) * pageSize, pageSize + 1);
+            String nextCursor = ids.size() > pageSize ? matches.cursorAfter(ids.get(pageSize - 1)).encode() : null;
+
+            // Exact and free on the index
+            SearchCountStrategy.Count count = new SearchCountStrategy.Count(matches.count(), false);
+            return new ProductSearchResults(objectMapper.getFactory(), findByIdsInOrder(ids.subList(0, Math.min(pageSize, ids.size()))),
+                    page, after != null ? 0 : (page - 1) * pageSize, pageSize, false, nextCursor, includeCount ? () -> count : null);
         }
 
-        Bson combinedFilters = filters.isEmpty() ? new Document() : Filters.and(filters);
+        // Sorted, so the same search typed in another order shares its cached count
+        Bson combinedFilters = ProductRepository.searchFilter(sorted(remainingWords), brandField, matchingBrand,
+                selectedStores != null ? sorted(selectedStores) : null);
 
-        // Query the database with pagination
-        List<Product> filteredProducts = new ArrayList<>();
-        MongoCursor<Document> cursor = collection.find(combinedFilters)
-                .skip((page - 1) * pageSize)
-                .limit(pageSize)
+        // Query the database with pagination, resuming after the cursor's _id instead of skipping when there is one
+        Bson pageFilter = after != null ? Filters.and(combinedFilters, ProductRepository.afterIdFilter(after.getLastId())) : combinedFilters;
+        MongoCursor<RawBsonDocument> cursor = rawCollection.find(pageFilter)
+                .sort(Sorts.ascending("_id"))
+                .skip(after != null ? 0 : (page - 1) * pageSize)
+                .limit(pageSize + 1)
                 .iterator();
 
-        try {
-            while (cursor.hasNext()) {
-                filteredProducts.add(productRepository.documentToProduct(cursor.next()));
-            }
-        } finally {
-            cursor.close();
-        }
-
-        // Count total products that match the filters
-        long totalProducts = collection.countDocuments(combinedFilters);
-
-        // Convert filtered products to Map<String, Object>
-        List<Map<String, Object>> productMaps = filteredProducts.stream()
-                .map(this::convertProductToMap)
-                .collect(Collectors.toList());
+        // Count total products that match the filters, cached per filter and generation, once the page is written
+        return new ProductSearchResults(objectMapper.getFactory(), cursor, page, after != null ? 0 : (page - 1) * pageSize,
+                pageSize, true, null, includeCount ? () -> searchCountStrategy.count(combinedFilters) : null);
+    }
 
-        // Create response with paginated products and metadata
-        Map<String, Object> response = new HashMap<>();
-        response.put("products", productMaps);
-        response.put("totalItems", totalProducts);
-        response.put("totalPages", (int) Math.ceil((double) totalProducts / pageSize));
-        response.put("currentPage", page);
 
-        return response;
+    private List<String> sorted(List<String> values) {
+        List<String> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted;
     }
 
-
-    private List<String> generateSubstrings(String[] words) {
-        List<String> substrings = new ArrayList<>();
-        for (int i = 0; i < words.length; i++) {
-            StringBuilder sb = new StringBuilder();
-            for (int j = i; j < words.length; j++) {
-                if (sb.length() > 0) {
-                    sb.append(" ");
-                }
-                sb.append(words[j]);
-                substrings.add(sb.toString());
-            }
+    // Raw products by _id, in the order of the ids given. Mongo returns an $in in index order, so the
+    // position in the list is added and sorted on server side; the cursor then streams in the right order.
+    private MongoCursor<RawBsonDocument> findByIdsInOrder(List<Object> ids) {
+        if (ids.isEmpty()) {
+            return null;
         }
-        return substrings;
+        return rawCollection.aggregate(List.of(
+                Aggregates.match(Filters.in("_id", ids)),
+                Aggregates.addFields(new Field<>("_order", new Document("$indexOfArray", List.of(ids, "$_id")))),
+                Aggregates.sort(Sorts.ascending("_order"))
+        )).iterator();
     }
 
-
-    public Map<String, List<Map<String, Object>>> findMatches(List<Map<String, String>> ingredients) {
-        Map<String, List<Map<String, Object>>> result = new HashMap<>();
-
+    // The best maxMatchCandidates products for every ingredient name, as a JSON object of ingredient name to
+    // products. Names that fold to the same text are looked up once, and the lookups run concurrently, at most
+    // matchConcurrency at a time across all requests, so a large recipe import neither runs serially nor floods
+    // Mongo. The lookups only find ids; the products of all of them are then read in one query and written
+    // from their raw BSON.
+    public void findMatches(List<Map<String, String>> ingredients, OutputStream out) throws IOException {
+        Map<String, List<String>> namesByKey = new LinkedHashMap<>();
         for (Map<String, String> ingredient : ingredients) {
             String ingredientName = ingredient.get("ingredient");
+            if (ingredientName != null && !ingredientName.isBlank()) {
+                namesByKey.computeIfAbsent(SearchText.fold(ingredientName.trim()), key -> new ArrayList<>()).add(ingredientName);
+            }
+        }
+
+        List<String> keys = new ArrayList<>(namesByKey.keySet());
+        List<Callable<List<Object>>> lookups = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            String ingredientName = namesByKey.get(key).get(0).trim();
+            lookups.add(() -> {
+                matchPermits.acquire();
+                try {
+                    return matchCandidates(ingredientName);
+                } finally {
+                    matchPermits.release();
+                }
+            });
+        }
 
-            List<Product> matchedProducts = productRepository.findByNameContaining(ingredientName);
+        List<List<Object>> candidates = new ArrayList<>(keys.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<Object>>> futures = executor.invokeAll(lookups, matchTimeoutMillis, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < keys.size(); i++) {
+                candidates.add(candidatesOf(futures.get(i), keys.get(i)));
+            }
+        } catch (InterruptedException e) {
+            // Nothing is written yet, so the response can still fail instead of ending as an empty 200
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while matching ingredients");
+            interrupted.initCause(e);
+            throw interrupted;
+        }
+
+        // Bounded by the number of ingredients times maxMatchCandidates, whatever the catalog size
+        Set<Object> ids = new LinkedHashSet<>();
+        candidates.forEach(ids::addAll);
+        Map<Object, RawBsonDocument> documents = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (RawBsonDocument document : rawCollection.find(Filters.in("_id", ids))) {
+                documents.put(SearchCursor.idValue(document.get("_id")), document);
+            }
+        }
 
-            List<Map<String, Object>> productMaps = matchedProducts.stream()
-                    .map(this::convertProductToMap)
-                    .collect(Collectors.toList());
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            for (int i = 0; i < keys.size(); i++) {
+                for (String ingredientName : new LinkedHashSet<>(namesByKey.get(keys.get(i)))) {
+                    json.writeArrayFieldStart(ingredientName);
+                    for (Object id : candidates.get(i)) {
+                        RawBsonDocument document = documents.get(id);
+                        // Deleted since the index was built
+                        if (document != null) {
+                            ProductJsonWriter.write(document, json);
+                        }
+                    }
+                    json.writeEndArray();
+                }
+            }
+            json.writeEndObject();
+        }
+    }
 
-            result.put(ingredientName, productMaps);
+    // Ranked by the search index when it is ready; until then the first products Mongo finds
+    private List<Object> matchCandidates(String ingredientName) {
+        ProductSearchIndex.Snapshot index = productSearchIndex.getSnapshot();
+        if (index == null) {
+            return productRepository.findIdsByNameContaining(ingredientName, maxMatchCandidates);
         }
+        return index.match(List.of(ingredientName), null, null, null, true).page(0, maxMatchCandidates);
+    }
 
-        return result;
+    // A lookup that failed or ran out of time leaves its ingredient without candidates instead of failing the request
+    private List<Object> candidatesOf(Future<List<Object>> future, String key) {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            System.err.println("Matching products for '" + key + "' timed out after " + matchTimeoutMillis + " ms.");
+        } catch (ExecutionException e) {
+            System.err.println("Error matching products for '" + key + "': " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Collections.emptyList();
     }
 
     private List<String> generateSubstrings(String query) {
@@ -198,53 +303,39 @@ public class ProductService {
     }
 
 
+    // Products of the ingredients in ingredient order, resolved with at most one Mongo query
     public List<Product> fetchProductsForIngredients(List<Ingredient> ingredients) {
-        return ingredients.stream()
-                .map(ingredient -> productRepository.findByEanAndStoreCode(ingredient.getEan(), ingredient.getStoreCode()))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
+        List<ProductKey> keys = ingredients.stream()
+                .map(ingredient -> new ProductKey(ingredient.getEan(), ingredient.getStoreCode()))
+                .collect(Collectors.toList());
+
+        Map<ProductKey, Product> products = findProducts(keys);
+
+        return keys.stream()
+                .map(products::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
-    private Map<String, Object> convertProductToMap(Product product) {
-        Map<String, Object> productMap = new HashMap<>();
-
-        productMap.put("id", product.getId());
-        productMap.put("ean", product.getEan());
-        productMap.put("name", product.getName());
-        productMap.put("brand", product.getBrand());
-        productMap.put("vendor", product.getVendor());
-        productMap.put("url", product.getUrl());
-        productMap.put("image", product.getImage());
-        productMap.put("description", product.getDescription());
-        productMap.put("current_price", product.getCurrentPrice());
-        productMap.put("current_unit_price", product.getCurrentUnitPrice());
-        productMap.put("weight", product.getWeight());
-        productMap.put("weight_unit", product.getWeightUnit());
-
-        if (product.getStore() != null) {
-            Map<String, Object> storeMap = new HashMap<>();
-            storeMap.put("name", product.getStore().getName());
-            storeMap.put("code", product.getStore().getCode());
-            storeMap.put("url", product.getStore().getUrl());
-            storeMap.put("logo", product.getStore().getLogo());
-
-            productMap.put("store", storeMap);
-        }
+    public Map<ProductKey, Product> findProducts(Collection<ProductKey> keys) {
+        return productLookupCache.findAll(keys);
+    }
 
-        if (product.getCategory() != null && !product.getCategory().isEmpty()) {
-            List<Map<String, Object>> categoryList = new ArrayList<>();
-            for (Product.Category category : product.getCategory()) {
-                Map<String, Object> categoryMap = new HashMap<>();
-                categoryMap.put("id", category.getId());
-                categoryMap.put("depth", category.getDepth());
-                categoryMap.put("name", category.getName());
-                categoryList.add(categoryMap);
-            }
-            productMap.put("category", categoryList);
-        }
+    // Current prices only, for recipe price calculation
+    public Map<ProductKey, Double> findPrices(Collection<ProductKey> keys) {
+        return productLookupCache.findPrices(keys);
+    }
 
-        return productMap;
+    // Daily min/avg/max price per store, rolled up to the requested interval on the server
+    public PriceHistoryDto getPriceHistory(String ean, List<String> storeCodes, LocalDate from, LocalDate to, String interval) {
+        PriceHistoryDto priceHistory = new PriceHistoryDto();
+        priceHistory.setEan(ean);
+        priceHistory.setFrom(from);
+        priceHistory.setTo(to);
+        priceHistory.setInterval(interval);
+        priceHistory.setStores(productPriceHistoryRepository.findSeries(ean, storeCodes, from, to, interval));
+        return priceHistory;
     }
 
+
 }
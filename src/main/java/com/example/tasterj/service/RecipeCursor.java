@@ -0,0 +1,88 @@
+package com.example.tasterj.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Map;
+
+// Opaque seek token for recipe listings: the sort key and id of the last item of the previous slice. The next
+// slice continues strictly after that (value, id) pair, so deep slices cost as much as the first. The token
+// names its sort property and is only accepted for a listing with the same sort.
+public final class RecipeCursor {
+
+    private static final String VERSION = "1";
+
+    // The value type each sort property seeks on; a token's value must have it, since the listings cast it
+    private static final Map<String, Character> VALUE_TYPES = Map.of(
+            "createdAt", 't',
+            "savedAt", 't',
+            "storedPrice", 'd');
+
+    private final String property;
+    private final Object value;
+    private final String lastId;
+
+    public RecipeCursor(String property, Object value, String lastId) {
+        if (!(value instanceof LocalDateTime) && !(value instanceof Double)) {
+            throw new IllegalArgumentException("Unsupported cursor value: " + value);
+        }
+        this.property = property;
+        this.value = value;
+        this.lastId = lastId;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public String getLastId() {
+        return lastId;
+    }
+
+    public String encode() {
+        String encodedValue = value instanceof LocalDateTime ? "t:" + value : "d:" + value;
+        String token = VERSION + "|" + property + "|" + encodedValue + "|" + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Decodes a token handed out for a listing sorted by property
+    public static RecipeCursor decode(String token, String property) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed recipe cursor.");
+        }
+
+        String[] parts = decoded.split("\\|", 4);
+        if (parts.length != 4 || !VERSION.equals(parts[0]) || parts[2].length() < 2 || parts[2].charAt(1) != ':' || parts[3].isEmpty()) {
+            throw new IllegalArgumentException("Malformed recipe cursor.");
+        }
+        if (!parts[1].equals(property)) {
+            throw new IllegalArgumentException("The cursor belongs to a listing with another sort.");
+        }
+        Character valueType = VALUE_TYPES.get(property);
+        if (valueType == null || parts[2].charAt(0) != valueType) {
+            throw new IllegalArgumentException("Malformed recipe cursor.");
+        }
+
+        String value = parts[2].substring(2);
+        try {
+            switch (parts[2].charAt(0)) {
+                case 't':
+                    return new RecipeCursor(property, LocalDateTime.parse(value), parts[3]);
+                case 'd':
+                    return new RecipeCursor(property, Double.valueOf(value), parts[3]);
+                default:
+                    throw new IllegalArgumentException("Malformed recipe cursor.");
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed recipe cursor.");
+        }
+    }
+}
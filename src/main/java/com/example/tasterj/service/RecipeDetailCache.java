@@ -0,0 +1,176 @@
+package com.example.tasterj.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Finished JSON of GET /api/recipes/{id}, with a strong ETag over exactly those bytes. An entry belongs to
+// the catalog generation it was built in, since its prices and product info come from that catalog, and is
+// dropped whenever the recipe is written: on update and delete, and when the price refresh reprices it.
+// Everything is dropped when a user changes, since recipes embed their author.
+// Recipes are written through this application only, so a hit needs no database round trip at all.
+@Component
+public class RecipeDetailCache {
+
+    // Key, entry and map overhead per cached recipe, on top of the JSON itself
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    // Recipes share eviction counters by hash, so a write only ever costs the loads of a few other recipes
+    // their caching, and the counters take fixed memory however many recipes are written
+    private static final int VERSION_STRIPES = 1024;
+
+    private final ProductCatalogGeneration catalogGeneration;
+    private final Cache<Key, Detail> details;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RecipeDetailCache(ProductCatalogGeneration catalogGeneration,
+                             @Value("${recipe.cache.max-bytes}") long maxBytes) {
+        this.catalogGeneration = catalogGeneration;
+        this.details = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, Detail detail) -> ENTRY_OVERHEAD_BYTES + detail.json.length)
+                .recordStats()
+                .build();
+    }
+
+    // The cached detail, or the one load writes, which is then cached
+    public Detail get(String recipeId, boolean includeProductInfo, Supplier<byte[]> load) {
+        Key key = new Key(recipeId, includeProductInfo);
+        long generation = catalogGeneration.current();
+
+        Detail cached = details.getIfPresent(key);
+        if (cached != null && cached.generation == generation) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        // Tagged with the generation read before loading; if a sync finishes meanwhile the entry is already stale
+        int stripe = stripe(recipeId);
+        long version = versions.get(stripe);
+        Detail detail = new Detail(generation, load.get());
+
+        // The load may have read the recipe before a write that has evicted it since. Checked after the put:
+        // an eviction either bumped the version before this check and the entry is taken back here, or
+        // bumps it after, and then invalidates the entry itself.
+        details.put(key, detail);
+        if (versions.get(stripe) != version) {
+            details.asMap().remove(key, detail);
+        }
+        return detail;
+    }
+
+    // Evicts once now and once more after the current transaction commits, so a read racing the write
+    // cannot leave the old recipe cached
+    public void evict(String recipeId) {
+        evictNow(recipeId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(recipeId);
+                }
+            });
+        }
+    }
+
+    // Bumps the version before invalidating, which get relies on
+    private void evictNow(String recipeId) {
+        versions.incrementAndGet(stripe(recipeId));
+        details.invalidate(new Key(recipeId, false));
+        details.invalidate(new Key(recipeId, true));
+    }
+
+    public void evictAll() {
+        for (int stripe = 0; stripe < VERSION_STRIPES; stripe++) {
+            versions.incrementAndGet(stripe);
+        }
+        details.invalidateAll();
+    }
+
+    private static int stripe(String recipeId) {
+        return Math.floorMod(recipeId.hashCode(), VERSION_STRIPES);
+    }
+
+    // Entries are also checked against the generation on read, this just frees the memory early
+    @EventListener
+    public void onCatalogUpdated(ProductCatalogUpdatedEvent event) {
+        evictAll();
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), details.stats().evictionCount(), details.estimatedSize(),
+                details.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+    }
+
+    @EqualsAndHashCode
+    private static class Key {
+
+        private final String recipeId;
+        private final boolean includeProductInfo;
+
+        private Key(String recipeId, boolean includeProductInfo) {
+            this.recipeId = recipeId;
+            this.includeProductInfo = includeProductInfo;
+        }
+    }
+
+    @Getter
+    public static class Detail {
+
+        private final long generation;
+        private final byte[] json;
+        // Strong: equal ETags mean byte-identical responses
+        private final String etag;
+
+        private Detail(long generation, byte[] json) {
+            this.generation = generation;
+            this.json = json;
+            this.etag = "\"" + sha256(json) + "\"";
+        }
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long size;
+        private final long bytes;
+        private final double hitRate;
+
+        private Stats(long hits, long misses, long evictions, long size, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.bytes = bytes;
+            this.hitRate = hits + misses > 0 ? (double) hits / (hits + misses) : 0.0;
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.model.ProductKey;
+import com.example.tasterj.repository.IngredientRepository;
+import com.example.tasterj.repository.RecipeRepository;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+// Recomputes recipe prices from the current product prices, in the background after every product sync and
+// on a schedule, so that reading a recipe never has to. When a sync names the products whose price changed,
+// only the recipes using them are repriced, found through the ingredients' (ean, store_code) index;
+// otherwise, and on the schedule, the whole recipes table is walked in id order. Either way recipes are
+// repriced in chunks of recipe.price-refresh.chunk-size, each in its own short transaction, and only
+// recipes whose price actually moved are written.
+@Component
+public class RecipePriceRefresher {
+
+    private final RecipeRepository recipeRepository;
+    private final IngredientRepository ingredientRepository;
+    private final ProductService productService;
+    private final RecipeDetailCache recipeDetailCache;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private final AtomicBoolean refreshRequested = new AtomicBoolean(false);
+
+    // What the next run has to cover; a full refresh covers any changed products as well
+    private final Object pendingLock = new Object();
+    private boolean fullRefreshPending;
+    private Set<ProductKey> pendingPriceChanges = new HashSet<>();
+
+    private volatile Stats lastRun;
+
+    public RecipePriceRefresher(RecipeRepository recipeRepository,
+                                IngredientRepository ingredientRepository,
+                                ProductService productService,
+                                RecipeDetailCache recipeDetailCache,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${recipe.price-refresh.chunk-size}") int chunkSize) {
+        this.recipeRepository = recipeRepository;
+        this.ingredientRepository = ingredientRepository;
+        this.productService = productService;
+        this.recipeDetailCache = recipeDetailCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    @EventListener
+    public void onCatalogUpdated(ProductCatalogUpdatedEvent event) {
+        if (event.getPriceChanges() != null) {
+            requestRefresh(event.getPriceChanges());
+        } else {
+            requestRefresh();
+        }
+    }
+
+    // Catches prices a failed or skipped run left behind
+    @Scheduled(cron = "${recipe.price-refresh.cron}")
+    public void scheduledRefresh() {
+        requestRefresh();
+    }
+
+    public void requestRefresh() {
+        synchronized (pendingLock) {
+            fullRefreshPending = true;
+            pendingPriceChanges = new HashSet<>();
+        }
+        startRefresh();
+    }
+
+    // Reprices only the recipes using these products
+    public void requestRefresh(Collection<ProductKey> priceChanges) {
+        if (priceChanges.isEmpty()) {
+            return;
+        }
+        synchronized (pendingLock) {
+            if (!fullRefreshPending) {
+                pendingPriceChanges.addAll(priceChanges);
+            }
+        }
+        startRefresh();
+    }
+
+    // Refreshes in the background. Requests arriving during a run are folded into one more run after it.
+    private void startRefresh() {
+        refreshRequested.set(true);
+        if (refreshing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("recipe-price-refresh").start(this::refreshWhileRequested);
+        }
+    }
+
+    private void refreshWhileRequested() {
+        try {
+            while (refreshRequested.getAndSet(false)) {
+                boolean full;
+                Set<ProductKey> priceChanges;
+                synchronized (pendingLock) {
+                    full = fullRefreshPending;
+                    priceChanges = pendingPriceChanges;
+                    fullRefreshPending = false;
+                    pendingPriceChanges = new HashSet<>();
+                }
+                try {
+                    if (full) {
+                        refreshAll();
+                    } else if (!priceChanges.isEmpty()) {
+                        refreshProducts(priceChanges);
+                    }
+                } catch (Exception e) {
+                    System.err.println("Error refreshing recipe prices: " + e.getMessage());
+                }
+            }
+        } finally {
+            refreshing.set(false);
+        }
+        if (refreshRequested.get()) {
+            startRefresh();
+        }
+    }
+
+    public Stats refreshAll() {
+        Instant startedAt = Instant.now();
+        long startNanos = System.nanoTime();
+        long scanned = 0;
+        long refreshed = 0;
+        long chunks = 0;
+
+        String afterId = "";
+        while (true) {
+            List<RecipeRepository.PriceView> recipes = recipeRepository.findPricesAfter(afterId, Limit.of(chunkSize));
+            if (recipes.isEmpty()) {
+                break;
+            }
+
+            Integer updated = transactionTemplate.execute(status -> refreshChunk(recipes));
+            scanned += recipes.size();
+            refreshed += updated != null ? updated : 0;
+            chunks++;
+            afterId = recipes.get(recipes.size() - 1).getId();
+        }
+
+        Stats stats = new Stats(startedAt, -1, scanned, refreshed, chunks, (System.nanoTime() - startNanos) / 1_000_000);
+        lastRun = stats;
+        System.out.printf("Recipe prices refreshed: %d of %d recipes changed, in %d chunks, in %d ms.%n",
+                refreshed, scanned, chunks, stats.getDurationMillis());
+        return stats;
+    }
+
+    // Reprices the recipes with an ingredient on one of the products, so a sync that changed a few prices
+    // touches the few recipes using them instead of the whole table
+    public Stats refreshProducts(Set<ProductKey> priceChanges) {
+        Instant startedAt = Instant.now();
+        long startNanos = System.nanoTime();
+
+        List<String> recipeIds = new ArrayList<>(findRecipesUsing(priceChanges));
+        long refreshed = 0;
+        long chunks = 0;
+        for (int from = 0; from < recipeIds.size(); from += chunkSize) {
+            List<String> chunkIds = recipeIds.subList(from, Math.min(from + chunkSize, recipeIds.size()));
+            List<RecipeRepository.PriceView> recipes = recipeRepository.findPricesByIds(chunkIds);
+            Integer updated = transactionTemplate.execute(status -> refreshChunk(recipes));
+            refreshed += updated != null ? updated : 0;
+            chunks++;
+        }
+
+        Stats stats = new Stats(startedAt, priceChanges.size(), recipeIds.size(), refreshed, chunks,
+                (System.nanoTime() - startNanos) / 1_000_000);
+        lastRun = stats;
+        System.out.printf("Recipe prices refreshed for %d changed products: %d of %d recipes using them changed, in %d ms.%n",
+                priceChanges.size(), refreshed, recipeIds.size(), stats.getDurationMillis());
+        return stats;
+    }
+
+    private Set<String> findRecipesUsing(Set<ProductKey> products) {
+        List<String> eans = products.stream()
+                .map(ProductKey::getEan)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+
+        Set<String> recipeIds = new TreeSet<>();
+        for (int from = 0; from < eans.size(); from += chunkSize) {
+            for (IngredientRepository.ProductView ingredient : ingredientRepository.findProductsByEans(
+                    eans.subList(from, Math.min(from + chunkSize, eans.size())))) {
+                if (products.contains(new ProductKey(ingredient.getEan(), ingredient.getStoreCode()))) {
+                    recipeIds.add(ingredient.getRecipeId());
+                }
+            }
+        }
+        return recipeIds;
+    }
+
+    // The prices of every ingredient in the chunk come from one product lookup
+    private int refreshChunk(List<RecipeRepository.PriceView> recipes) {
+        Map<String, List<ProductKey>> keysByRecipe = new HashMap<>();
+        for (RecipeRepository.PriceView recipe : recipes) {
+            keysByRecipe.put(recipe.getId(), new ArrayList<>());
+        }
+        List<ProductKey> allKeys = new ArrayList<>();
+        for (IngredientRepository.ProductView ingredient : ingredientRepository.findProductsByRecipeIds(keysByRecipe.keySet())) {
+            ProductKey key = new ProductKey(ingredient.getEan(), ingredient.getStoreCode());
+            keysByRecipe.get(ingredient.getRecipeId()).add(key);
+            allKeys.add(key);
+        }
+        Map<ProductKey, Double> prices = productService.findPrices(allKeys);
+
+        int updated = 0;
+        LocalDateTime now = LocalDateTime.now();
+        for (RecipeRepository.PriceView recipe : recipes) {
+            double currentPrice = currentPrice(keysByRecipe.get(recipe.getId()), prices);
+            double storedPrice = storedPrice(recipe.getStoredPrice(), currentPrice);
+            if (currentPrice == recipe.getCurrentPrice() && storedPrice == recipe.getStoredPrice()) {
+                continue;
+            }
+            if (recipeRepository.updatePrices(recipe.getId(), recipe.getCurrentPrice(), recipe.getStoredPrice(),
+                    currentPrice, storedPrice, now) > 0) {
+                // A detail cached since the sync was built with the old price
+                recipeDetailCache.evict(recipe.getId());
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    // Sum of the ingredients' product prices, rounded to øre; an ingredient listed twice counts twice
+    static double currentPrice(List<ProductKey> keys, Map<ProductKey, Double> prices) {
+        BigDecimal currentPrice = BigDecimal.ZERO;
+        for (ProductKey key : keys) {
+            Double productPrice = prices.get(key);
+            if (productPrice != null) {
+                currentPrice = currentPrice.add(BigDecimal.valueOf(productPrice));
+            }
+        }
+        return currentPrice.setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    // The stored price, which searches filter and sort on, only follows changes of more than 5%
+    static double storedPrice(double storedPrice, double currentPrice) {
+        if (storedPrice == 0 || Math.abs(currentPrice - storedPrice) > storedPrice * 0.05) {
+            return currentPrice;
+        }
+        return storedPrice;
+    }
+
+    // The last completed run, or null before the first one
+    public Stats getLastRun() {
+        return lastRun;
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final Instant startedAt;
+        // Changed products the run was for, or -1 for a run over all recipes
+        private final long priceChanges;
+        private final long recipes;
+        private final long refreshed;
+        private final long chunks;
+        private final long durationMillis;
+
+        private Stats(Instant startedAt, long priceChanges, long recipes, long refreshed, long chunks, long durationMillis) {
+            this.startedAt = startedAt;
+            this.priceChanges = priceChanges;
+            this.recipes = recipes;
+            this.refreshed = refreshed;
+            this.chunks = chunks;
+            this.durationMillis = durationMillis;
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package com.example.tasterj.service;
 
+import com.example.tasterj.dto.CreateIngredientDto;
 import com.example.tasterj.dto.CreateRecipeDto;
+import com.example.tasterj.dto.CursorSlice;
 import com.example.tasterj.dto.RecipeWithProductInfo;
 import com.example.tasterj.dto.UpdateRecipeDto;
 import com.example.tasterj.exception.ResourceNotFoundException;
 import com.example.tasterj.model.*;
 
 import com.example.tasterj.repository.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,12 +19,13 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -48,40 +52,33 @@ public class RecipeService {
     private IngredientRepository ingredientRepository;
 
     @Autowired
-    private ProductRepository productRepository;
+    private ProductService productService;
 
     @Autowired
-    private ProductService productService;
+    private RecipeDetailCache recipeDetailCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     public Page<Recipe> getRecipes(Pageable pageable) {
         return recipeRepository.findAll(pageable);
     }
 
-    @Transactional
+    // Prices are kept current by RecipePriceRefresher, so reading a recipe writes nothing
+    @Transactional(readOnly = true)
     public Recipe getRecipeById(String id) {
-        Recipe recipe = recipeRepository.findById(id)
+        return recipeRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Recipe not found"));
-
-        List<Ingredient> ingredients = ingredientRepository.findByRecipeId(id);
-
-        updateRecipePrice(recipe, ingredients);
-
-        return recipe;
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public RecipeWithProductInfo getRecipeById(String id, boolean includeProductInfo) {
         Recipe recipe = recipeRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Recipe not found"));
 
-        List<Ingredient> ingredients = ingredientRepository.findByRecipeId(id);
-
-        updateRecipePrice(recipe, ingredients);
-
         if (includeProductInfo) {
-            List<Product> products = productService.fetchProductsForIngredients(ingredients);
-
-            List<Map<String, Object>> productInfo = products.stream()
+            List<Ingredient> ingredients = ingredientRepository.findByRecipeId(id);
+            List<Map<String, Object>> productInfo = productService.fetchProductsForIngredients(ingredients).stream()
                     .map(product -> objectMapper.convertValue(product, new TypeReference<Map<String, Object>>() {}))
                     .collect(Collectors.toList());
 
@@ -91,6 +88,22 @@ public class RecipeService {
         return new RecipeWithProductInfo(recipe, null);
     }
 
+    // getRecipeById(id, includeProductInfo) as the finished JSON. Not transactional itself, so a cache hit
+    // never takes a database connection; a miss loads and writes the recipe in one read-only transaction.
+    public RecipeDetailCache.Detail getRecipeDetail(String id, boolean includeProductInfo) {
+        return recipeDetailCache.get(id, includeProductInfo, () -> {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            return readOnly.execute(status -> {
+                try {
+                    return objectMapper.writeValueAsBytes(getRecipeById(id, includeProductInfo));
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        });
+    }
+
     @Transactional
     public Page<Recipe> getUserRecipes(String userId, Pageable pageable) {
         return recipeRepository.findByUser_SupabaseUserId(userId, pageable);
@@ -113,6 +126,7 @@ public class RecipeService {
         recipe.setTags(createRecipeDto.getTags());
 
         final double[] totalCurrentPrice = {0.0};
+        Map<ProductKey, Double> prices = findPrices(createRecipeDto.getIngredients());
 
         List<Ingredient> ingredients = createRecipeDto.getIngredients().stream().map(dto -> {
             Ingredient ingredient = new Ingredient();
@@ -125,13 +139,9 @@ public class RecipeService {
             ingredient.setStoreCode(dto.getStoreCode());
             ingredient.setImage(dto.getImage());
 
-            Optional<Product> productOpt = productRepository.findByEanAndStoreCode(dto.getEan(), dto.getStoreCode());
-            if (productOpt.isPresent()) {
-                Product product = productOpt.get();
-                Double productPrice = product.getCurrentPrice();
-                if (productPrice != null) {
-                    totalCurrentPrice[0] += productPrice;
-                }
+            Double productPrice = prices.get(new ProductKey(dto.getEan(), dto.getStoreCode()));
+            if (productPrice != null) {
+                totalCurrentPrice[0] += productPrice;
             }
 
             return ingredient;
@@ -187,6 +197,9 @@ public class RecipeService {
 
             final double[] totalCurrentPrice = {0.0};
 
+            // Fetch the prices in one query
+            Map<ProductKey, Double> prices = findPrices(updateRecipeDto.getIngredients());
+
             // Add new ingredients
             List<Ingredient> updatedIngredients = updateRecipeDto.getIngredients().stream().map(dto -> {
                 Ingredient ingredient = new Ingredient();
@@ -199,14 +212,9 @@ public class RecipeService {
                 ingredient.setStoreCode(dto.getStoreCode());
                 ingredient.setImage(dto.getImage());
 
-                // Fetch product for price calculation
-                Optional<Product> productOpt = productRepository.findByEanAndStoreCode(dto.getEan(), dto.getStoreCode());
-                if (productOpt.isPresent()) {
-                    Product product = productOpt.get();
-                    Double productPrice = product.getCurrentPrice();
-                    if (productPrice != null) {
-                        totalCurrentPrice[0] += productPrice;
-                    }
+                Double productPrice = prices.get(new ProductKey(dto.getEan(), dto.getStoreCode()));
+                if (productPrice != null) {
+                    totalCurrentPrice[0] += productPrice;
                 }
 
                 return ingredient;
@@ -236,6 +244,8 @@ public class RecipeService {
             recipe.setPublic(updateRecipeDto.getIsPublic());
         }
 
+        recipeDetailCache.evict(id);
+
         // Save and return the updated recipe
         return recipeRepository.save(recipe);
     }
@@ -268,6 +278,7 @@ public class RecipeService {
         }
 
         recipeRepository.delete(recipe);
+        recipeDetailCache.evict(id);
     }
 
     @Transactional
@@ -362,6 +373,9 @@ public class RecipeService {
 
     @Transactional
     public Recipe saveRecipe(Recipe recipe) {
+        if (recipe.getId() != null) {
+            recipeDetailCache.evict(recipe.getId());
+        }
         return recipeRepository.save(recipe);
     }
 
@@ -383,57 +397,129 @@ public class RecipeService {
             sort = "desc".equalsIgnoreCase(sortDirection)
                     ? Sort.by("createdAt").descending()
                     : Sort.by("createdAt").ascending();
+        } else if ("relevance".equalsIgnoreCase(sortBy)) {
+            // Best matches first whatever the direction; newest first among equals and without a query
+            sort = Sort.by(RecipeSearchRepositoryImpl.RELEVANCE).descending().and(Sort.by("createdAt").descending());
         } else {
-            throw new IllegalArgumentException("Invalid sortBy parameter. Use 'price' or 'date'.");
+            throw new IllegalArgumentException("Invalid sortBy parameter. Use 'price', 'date' or 'relevance'.");
         }
 
         Pageable sortedPageable = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort);
 
         try {
+            // Full-text over name, tags and description; without a query only the price filter applies
             if (userId != null && isPublic != null && !isPublic) {
-                return recipeRepository.findUserPrivateRecipes(query, minPrice, maxPrice, userId, sortedPageable);
+                return recipeRepository.searchUserPrivate(query, minPrice, maxPrice, userId, sortedPageable);
             }
 
-            return (query == null || query.trim().isEmpty())
-                    ? recipeRepository.findPublicRecipesWithPriceFilter(minPrice, maxPrice, sortedPageable)
-                    : recipeRepository.findPublicByNameOrTagsWithPriceFilter(query, minPrice, maxPrice, sortedPageable);
+            return recipeRepository.searchPublic(query, minPrice, maxPrice, sortedPageable);
 
         } catch (Exception e) {
             throw new RuntimeException("Search failed", e);
         }
     }
 
-    private void updateRecipePrice(Recipe recipe, List<Ingredient> ingredients) {
-        List<Product> products = productService.fetchProductsForIngredients(ingredients);
-        double currentPrice = calculateCurrentPrice(products);
+    // Infinite-scroll counterparts of the listings above: seek past the cursor instead of counting and
+    // skipping, so every slice costs the same however deep the client has scrolled
+    @Transactional(readOnly = true)
+    public CursorSlice<Recipe> scrollRecipes(String cursor, int size) {
+        RecipeCursor after = cursor != null ? RecipeCursor.decode(cursor, "createdAt") : null;
+        List<Recipe> recipes = recipeRepository.scrollAll(valueOf(after), idOf(after), sliceLimit(size));
+        return recipeSlice(recipes, size, "createdAt");
+    }
 
-        recipe.setCurrentPrice(roundToTwoDecimalPlaces(currentPrice));
+    @Transactional(readOnly = true)
+    public CursorSlice<Recipe> scrollUserRecipes(String userId, String cursor, int size) {
+        RecipeCursor after = cursor != null ? RecipeCursor.decode(cursor, "createdAt") : null;
+        List<Recipe> recipes = recipeRepository.scrollByUser(userId, valueOf(after), idOf(after), sliceLimit(size));
+        return recipeSlice(recipes, size, "createdAt");
+    }
 
-        if (recipe.getStoredPrice() == 0 || Math.abs(currentPrice - recipe.getStoredPrice()) > recipe.getStoredPrice() * 0.05) {
-            recipe.setStoredPrice(roundToTwoDecimalPlaces(currentPrice));
+    @Transactional(readOnly = true)
+    public CursorSlice<SavedRecipe> scrollSavedRecipesForUser(String cursor, int size) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (!(authentication instanceof JwtAuthenticationToken)) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
         }
 
-        recipe.setPriceLastUpdated(LocalDateTime.now());
-        recipeRepository.save(recipe);
+        String userId = ((JwtAuthenticationToken) authentication).getTokenAttributes().get("sub").toString();
+
+        User user = userRepository.findBySupabaseUserId(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+
+        RecipeCursor after = cursor != null ? RecipeCursor.decode(cursor, "savedAt") : null;
+        List<SavedRecipe> savedRecipes = after != null
+                ? savedRecipeRepository.findByUserWithRecipesAfter(user, (LocalDateTime) after.getValue(), after.getLastId(), Limit.of(sliceLimit(size)))
+                : savedRecipeRepository.findLatestByUserWithRecipes(user, Limit.of(sliceLimit(size)));
+
+        String nextCursor = null;
+        if (savedRecipes.size() > size) {
+            savedRecipes = savedRecipes.subList(0, size);
+            SavedRecipe last = savedRecipes.get(size - 1);
+            nextCursor = new RecipeCursor("savedAt", last.getSavedAt(), last.getId()).encode();
+        }
+        return new CursorSlice<>(savedRecipes, size, nextCursor);
     }
 
-    private double roundToTwoDecimalPlaces(double value) {
-        BigDecimal roundedValue = BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
-        return roundedValue.doubleValue();
+    // Sorted by price or date only; relevance has no stable key to seek on
+    @Transactional(readOnly = true)
+    public CursorSlice<Recipe> scrollSearchRecipes(String query, double minPrice, double maxPrice, String sortBy, String sortDirection,
+                                                   Boolean isPublic, String cursor, int size) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userId = null;
+
+        if (authentication instanceof JwtAuthenticationToken) {
+            userId = ((JwtAuthenticationToken) authentication).getTokenAttributes().get("sub").toString();
+        }
+
+        String property;
+        if ("price".equalsIgnoreCase(sortBy)) {
+            property = "storedPrice";
+        } else if ("date".equalsIgnoreCase(sortBy)) {
+            property = "createdAt";
+        } else {
+            throw new IllegalArgumentException("Invalid sortBy parameter. Use 'price' or 'date'.");
+        }
+        boolean ascending = !"desc".equalsIgnoreCase(sortDirection);
+
+        RecipeCursor after = cursor != null ? RecipeCursor.decode(cursor, property) : null;
+        List<Recipe> recipes = userId != null && isPublic != null && !isPublic
+                ? recipeRepository.scrollUserPrivate(query, minPrice, maxPrice, userId, property, ascending, valueOf(after), idOf(after), sliceLimit(size))
+                : recipeRepository.scrollPublic(query, minPrice, maxPrice, property, ascending, valueOf(after), idOf(after), sliceLimit(size));
+        return recipeSlice(recipes, size, property);
     }
 
-    private double calculateCurrentPrice(List<Product> products) {
-        BigDecimal currentPrice = BigDecimal.ZERO;
+    // Read with one extra recipe, which only tells whether another slice follows
+    private CursorSlice<Recipe> recipeSlice(List<Recipe> recipes, int size, String property) {
+        String nextCursor = null;
+        if (recipes.size() > size) {
+            recipes = recipes.subList(0, size);
+            Recipe last = recipes.get(size - 1);
+            Object value = "storedPrice".equals(property) ? (Object) last.getStoredPrice() : last.getCreatedAt();
+            nextCursor = new RecipeCursor(property, value, last.getId()).encode();
+        }
+        return new CursorSlice<>(recipes, size, nextCursor);
+    }
 
-        for (Product product : products) {
-            Double productPrice = product.getCurrentPrice();
-            if (productPrice != null) {
-                currentPrice = currentPrice.add(BigDecimal.valueOf(productPrice));
-            }
+    private static int sliceLimit(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be at least 1.");
         }
+        return size + 1;
+    }
 
-        return currentPrice.doubleValue();
+    private static Object valueOf(RecipeCursor cursor) {
+        return cursor != null ? cursor.getValue() : null;
     }
 
+    private static String idOf(RecipeCursor cursor) {
+        return cursor != null ? cursor.getLastId() : null;
+    }
 
+    private Map<ProductKey, Double> findPrices(List<CreateIngredientDto> ingredients) {
+        List<ProductKey> keys = ingredients.stream()
+                .map(dto -> new ProductKey(dto.getEan(), dto.getStoreCode()))
+                .collect(Collectors.toList());
+        return productService.findPrices(keys);
+    }
 }
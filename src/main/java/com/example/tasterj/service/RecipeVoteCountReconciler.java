@@ -0,0 +1,133 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.repository.RecipeRepository;
+import com.example.tasterj.repository.RecipeVoteCountRepository;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Rebuilds recipe_vote_counts from votes, on startup, which also fills the counts in for votes cast before
+// they existed, and on a schedule, which corrects any drift. Walks the recipes in id order in chunks of
+// vote.reconcile.chunk-size, each in its own transaction holding the chunk's counter rows, the same locks
+// VoteService.vote takes, so a chunk is counted with no vote on it in flight.
+@Component
+public class RecipeVoteCountReconciler {
+
+    private final RecipeRepository recipeRepository;
+    private final RecipeVoteCountRepository voteCountRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    private final AtomicBoolean reconciling = new AtomicBoolean(false);
+
+    private volatile Stats lastRun;
+
+    public RecipeVoteCountReconciler(RecipeRepository recipeRepository,
+                                     RecipeVoteCountRepository voteCountRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${vote.reconcile.chunk-size}") int chunkSize) {
+        this.recipeRepository = recipeRepository;
+        this.voteCountRepository = voteCountRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        requestReconcile();
+    }
+
+    @Scheduled(cron = "${vote.reconcile.cron}")
+    public void scheduledReconcile() {
+        requestReconcile();
+    }
+
+    // Reconciles in the background, unless a run is already going
+    public void requestReconcile() {
+        if (reconciling.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("vote-count-reconcile").start(() -> {
+                try {
+                    reconcile();
+                } catch (Exception e) {
+                    System.err.println("Error reconciling recipe vote counts: " + e.getMessage());
+                } finally {
+                    reconciling.set(false);
+                }
+            });
+        }
+    }
+
+    public Stats reconcile() {
+        Instant startedAt = Instant.now();
+        long startNanos = System.nanoTime();
+        long recipes = 0;
+        long corrected = 0;
+        long chunks = 0;
+
+        String afterId = "";
+        while (true) {
+            List<String> recipeIds = findIdsAfter(afterId, chunkSize);
+            if (recipeIds.isEmpty()) {
+                break;
+            }
+
+            recipes += recipeIds.size();
+            corrected += recount(recipeIds);
+            chunks++;
+            afterId = recipeIds.get(recipeIds.size() - 1);
+        }
+
+        Stats stats = new Stats(startedAt, recipes, corrected, chunks, (System.nanoTime() - startNanos) / 1_000_000);
+        lastRun = stats;
+        System.out.printf("Recipe vote counts reconciled: %d of %d recipes corrected, in %d chunks, in %d ms.%n",
+                corrected, recipes, chunks, stats.getDurationMillis());
+        return stats;
+    }
+
+    List<String> findIdsAfter(String afterId, int limit) {
+        return recipeRepository.findIdsAfter(afterId, Limit.of(limit));
+    }
+
+    // Recounts one chunk in its own transaction, returning how many of its recipes were corrected
+    int recount(List<String> recipeIds) {
+        Integer recounted = transactionTemplate.execute(status -> {
+            voteCountRepository.lockCounts(recipeIds);
+            return voteCountRepository.recount(recipeIds);
+        });
+        return recounted != null ? recounted : 0;
+    }
+
+    // The last completed run, or null before the first one
+    public Stats getLastRun() {
+        return lastRun;
+    }
+
+    @Getter
+    public static class Stats {
+
+        private final Instant startedAt;
+        private final long recipes;
+        // Recipes whose counts did not match votes
+        private final long corrected;
+        private final long chunks;
+        private final long durationMillis;
+
+        private Stats(Instant startedAt, long recipes, long corrected, long chunks, long durationMillis) {
+            this.startedAt = startedAt;
+            this.recipes = recipes;
+            this.corrected = corrected;
+            this.chunks = chunks;
+            this.durationMillis = durationMillis;
+        }
+    }
+}
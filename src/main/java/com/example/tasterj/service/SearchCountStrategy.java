@@ -0,0 +1,119 @@
+package com.example.tasterj.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.CountOptions;
+import lombok.Getter;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Total counts for product searches that run against Mongo. Exact counts are cached per filter until the
+// catalog generation changes; a count that would take longer than the time budget is estimated from a
+// random sample instead and flagged as approximate. Estimates are not cached, so the next search tries
+// the exact count again.
+@Component
+public class SearchCountStrategy {
+
+    private final MongoCollection<Document> collection;
+    private final ProductCatalogGeneration catalogGeneration;
+    private final long timeBudgetMillis;
+    private final int sampleSize;
+    private final Cache<String, Count> counts;
+
+    public SearchCountStrategy(MongoClient mongoClient,
+                               @Value("${mongodb.database}") String databaseName,
+                               ProductCatalogGeneration catalogGeneration,
+                               @Value("${search.count.time-budget-ms}") long timeBudgetMillis,
+                               @Value("${search.count.sample-size}") int sampleSize,
+                               @Value("${search.count.cache-size}") long cacheSize) {
+        this(mongoClient.getDatabase(databaseName).getCollection("products_collection"), catalogGeneration,
+                timeBudgetMillis, sampleSize, cacheSize);
+    }
+
+    SearchCountStrategy(MongoCollection<Document> collection, ProductCatalogGeneration catalogGeneration,
+                        long timeBudgetMillis, int sampleSize, long cacheSize) {
+        this.collection = collection;
+        this.catalogGeneration = catalogGeneration;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.sampleSize = sampleSize;
+        this.counts = Caffeine.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    public Count count(Bson filter) {
+        // The generation is part of the key, so an ingest makes every older count unreachable at once
+        String key = catalogGeneration.current() + ":" + filter.toBsonDocument().toJson();
+
+        Count cached = counts.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        Count count;
+        try {
+            count = new Count(countExactly(filter), false);
+        } catch (MongoExecutionTimeoutException e) {
+            return estimate(filter);
+        }
+        counts.put(key, count);
+        return count;
+    }
+
+    // Match rate of the filter in a random sample, scaled to the collection size from its metadata. A
+    // selective filter often matches nothing in the sample; the caller raises that to what its page shows.
+    private Count estimate(Bson filter) {
+        long total = estimatedTotal();
+        long matched = countInSample(filter);
+        long sampledDocuments = Math.min(sampleSize, total);
+        long estimate = sampledDocuments > 0 ? Math.round((double) matched / sampledDocuments * total) : 0;
+        return new Count(estimate, true);
+    }
+
+    // Throws MongoExecutionTimeoutException when the count outruns the time budget
+    long countExactly(Bson filter) {
+        return collection.countDocuments(filter, new CountOptions().maxTime(timeBudgetMillis, TimeUnit.MILLISECONDS));
+    }
+
+    long estimatedTotal() {
+        return collection.estimatedDocumentCount();
+    }
+
+    long countInSample(Bson filter) {
+        Document sampled = collection.aggregate(List.of(
+                Aggregates.sample(sampleSize),
+                Aggregates.match(filter),
+                Aggregates.count("matched"))).first();
+        return sampled != null ? sampled.get("matched", Number.class).longValue() : 0;
+    }
+
+    @EventListener
+    public void onCatalogUpdated(ProductCatalogUpdatedEvent event) {
+        counts.invalidateAll();
+    }
+
+    @Getter
+    public static class Count {
+
+        private final long value;
+        private final boolean approximate;
+
+        public Count(long value, boolean approximate) {
+            this.value = value;
+            this.approximate = approximate;
+        }
+
+        // Never less than the products a page has already shown to exist
+        public Count atLeast(long shown) {
+            return shown > value ? new Count(shown, approximate) : this;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.tasterj.service;
+
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.types.ObjectId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Opaque search-after token: where the previous page of a product search ended. Index results are ranked by
+// score and then _id, so the token holds the last score (in hundredths) and _id; Mongo results are ordered by
+// _id alone and carry no score. Clients pass the token back as is and never parse it.
+public final class SearchCursor {
+
+    private static final String VERSION = "2";
+
+    private final Object lastId;
+    private final Integer score;
+
+    public SearchCursor(Object lastId) {
+        this(lastId, null);
+    }
+
+    public SearchCursor(Object lastId, Integer score) {
+        if (!(lastId instanceof ObjectId) && !(lastId instanceof String)) {
+            throw new IllegalArgumentException("Unsupported _id type: " + lastId);
+        }
+        this.lastId = lastId;
+        this.score = score;
+    }
+
+    public Object getLastId() {
+        return lastId;
+    }
+
+    public Integer getScore() {
+        return score;
+    }
+
+    public String encode() {
+        String id = lastId instanceof ObjectId objectId ? "o:" + objectId.toHexString() : "s:" + lastId;
+        String token = VERSION + "|" + (score != null ? score : "") + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SearchCursor decode(String token) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed search cursor.");
+        }
+
+        String[] parts = decoded.split("\\|", 3);
+        if (parts.length != 3 || !VERSION.equals(parts[0]) || parts[2].length() < 2 || parts[2].charAt(1) != ':') {
+            throw new IllegalArgumentException("Malformed search cursor.");
+        }
+
+        Integer score = null;
+        if (!parts[1].isEmpty()) {
+            try {
+                score = Integer.valueOf(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed search cursor.");
+            }
+        }
+
+        String id = parts[2].substring(2);
+        switch (parts[2].charAt(0)) {
+            case 'o':
+                if (!ObjectId.isValid(id)) {
+                    throw new IllegalArgumentException("Malformed search cursor.");
+                }
+                return new SearchCursor(new ObjectId(id), score);
+            case 's':
+                return new SearchCursor(id, score);
+            default:
+                throw new IllegalArgumentException("Malformed search cursor.");
+        }
+    }
+
+    // The _id of a raw BSON document as the index and cursors hold it
+    public static Object idValue(BsonValue id) {
+        if (id instanceof BsonObjectId objectId) {
+            return objectId.getValue();
+        }
+        return ((BsonString) id).getValue();
+    }
+
+    // Mongo's order for the _id types products have: all strings (legacy ids) sort before all ObjectIds
+    public static int compareIds(Object a, Object b) {
+        boolean aObjectId = a instanceof ObjectId;
+        boolean bObjectId = b instanceof ObjectId;
+        if (aObjectId != bObjectId) {
+            return aObjectId ? 1 : -1;
+        }
+        return aObjectId ? ((ObjectId) a).compareTo((ObjectId) b) : ((String) a).compareTo((String) b);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.tasterj.service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Classic token bucket: holds up to capacity tokens and refills continuously at capacity per period
+public class TokenBucket {
+
+    private final long capacity;
+    private final double tokensPerNano;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(long capacity, Duration period) {
+        if (capacity <= 0 || period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("Token bucket needs a positive capacity and period");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = (double) capacity / period.toNanos();
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    // Blocks until a token is available. Sleeps outside the lock so waiting threads never hold it.
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            lock.lock();
+            try {
+                refill();
+                if (tokens >= 1.0) {
+                    tokens -= 1.0;
+                    return;
+                }
+                waitNanos = (long) Math.ceil((1.0 - tokens) / tokensPerNano);
+            } finally {
+                lock.unlock();
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, 1_000_000L));
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -16,6 +16,9 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private RecipeDetailCache recipeDetailCache;
+
     public User getUserById(Long id) {
         return userRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User with id " + id + " not found"));
@@ -35,6 +38,8 @@ public class UserService {
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User with id " + id + " not found"));
         user.setName(userDetails.getName());
         user.setEmail(userDetails.getEmail());
+        // Cached recipes embed their author
+        recipeDetailCache.evictAll();
         return userRepository.save(user);
     }
 
@@ -42,6 +47,7 @@ public class UserService {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User with id " + id + " not found"));
         userRepository.delete(user);
+        recipeDetailCache.evictAll();
     }
 
     public User createUser(User user) {
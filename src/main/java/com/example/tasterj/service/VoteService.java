@@ -2,9 +2,11 @@ package com.example.tasterj.service;
 
 import com.example.tasterj.dto.RecipeWithVotesDto;
 import com.example.tasterj.model.Recipe;
+import com.example.tasterj.model.RecipeVoteCount;
 import com.example.tasterj.model.User;
 import com.example.tasterj.model.Vote;
 import com.example.tasterj.model.VoteType;
+import com.example.tasterj.repository.RecipeVoteCountRepository;
 import com.example.tasterj.repository.VoteRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,11 +17,14 @@ import java.util.Optional;
 public class VoteService {
 
     private final VoteRepository voteRepository;
+    private final RecipeVoteCountRepository voteCountRepository;
     private final RecipeService recipeService;
     private final UserService userService;
 
-    public VoteService(VoteRepository voteRepository, RecipeService recipeService, UserService userService) {
+    public VoteService(VoteRepository voteRepository, RecipeVoteCountRepository voteCountRepository,
+                       RecipeService recipeService, UserService userService) {
         this.voteRepository = voteRepository;
+        this.voteCountRepository = voteCountRepository;
         this.recipeService = recipeService;
         this.userService = userService;
     }
@@ -36,8 +41,13 @@ public class VoteService {
             throw new RuntimeException("User not found with ID: " + userId);
         }
 
+        // Takes the recipe's counter row lock before reading the user's vote, so votes on the recipe and its
+        // reconciliation run one at a time and the counts move exactly as votes does
+        voteCountRepository.addVotes(recipeId, 0, 0);
+
         Optional<Vote> existingVoteOptional = voteRepository.findByUser_SupabaseUserIdAndRecipe_Id(userId, recipeId);
         VoteType voteType = (upvote == null) ? VoteType.NONE : (upvote ? VoteType.UPVOTE : VoteType.DOWNVOTE);
+        VoteType previousVoteType = existingVoteOptional.map(Vote::getVoteType).orElse(VoteType.NONE);
 
         if (existingVoteOptional.isPresent()) {
             Vote existingVote = existingVoteOptional.get();
@@ -54,16 +64,35 @@ public class VoteService {
             newVote.setVoteType(voteType);
             voteRepository.save(newVote);
         }
+
+        int upvotes = delta(previousVoteType, voteType, VoteType.UPVOTE);
+        int downvotes = delta(previousVoteType, voteType, VoteType.DOWNVOTE);
+        if (upvotes != 0 || downvotes != 0) {
+            voteCountRepository.addVotes(recipeId, upvotes, downvotes);
+        }
+    }
+
+    // How a user's vote changing from previous to current moves the count of counted votes. A flip moves one
+    // vote from one count to the other, a removal takes it off, voting the same way again changes nothing.
+    static int delta(VoteType previous, VoteType current, VoteType counted) {
+        return count(current, counted) - count(previous, counted);
+    }
+
+    private static int count(VoteType voteType, VoteType counted) {
+        return voteType == counted ? 1 : 0;
     }
 
+    @Transactional(readOnly = true)
     public RecipeWithVotesDto getRecipeWithVotes(String recipeId, String userId) {
         Recipe recipe = recipeService.getRecipeById(recipeId);
         if (recipe == null) {
             throw new RuntimeException("Recipe not found with ID: " + recipeId);
         }
 
-        int upvotes = voteRepository.countByRecipeAndVoteType(recipe, VoteType.UPVOTE);
-        int downvotes = voteRepository.countByRecipeAndVoteType(recipe, VoteType.DOWNVOTE);
+        // Recipes nobody has voted on yet have no counts
+        Optional<RecipeVoteCount> counts = voteCountRepository.findById(recipeId);
+        int upvotes = counts.map(RecipeVoteCount::getUpvotes).orElse(0);
+        int downvotes = counts.map(RecipeVoteCount::getDownvotes).orElse(0);
 
         VoteType userVoteType = VoteType.NONE;
         if (userId != null) {
@@ -0,0 +1,95 @@
+package com.example.tasterj.repository;
+
+import com.example.tasterj.model.Product;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// The codec must decode exactly what documentToProduct does; the client is never connected
+class ProductCodecTest {
+
+    private static final ProductCodec CODEC = new ProductCodec();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static MongoClient mongoClient;
+    private static ProductRepository repository;
+
+    @BeforeAll
+    static void create() {
+        mongoClient = MongoClients.create("mongodb://localhost:1");
+        repository = new ProductRepository(mongoClient, "unused");
+    }
+
+    @AfterAll
+    static void close() {
+        mongoClient.close();
+    }
+
+    @Test
+    void decodesLikeDocumentToProduct() {
+        byte[] bytes = ProductDecodeFixtures.bytes(ProductDecodeFixtures.product());
+
+        Product expected = repository.documentToProduct(ProductDecodeFixtures.toDocument(bytes));
+        Product decoded = decode(bytes);
+
+        assertEquals(asMap(expected), asMap(decoded));
+        assertEquals("66b1f0c2a4e5d3b2c1a09f87", decoded.getId());
+    }
+
+    @Test
+    void givesProjectedOutFieldsTheUsualDefaults() {
+        Document projected = new Document("_id", "legacy-id")
+                .append("ean", "7038010009457")
+                .append("store", new Document("code", "MENY_NO"))
+                .append("current_price", 22.9);
+        byte[] bytes = ProductDecodeFixtures.bytes(projected);
+
+        Product decoded = decode(bytes);
+
+        assertEquals(asMap(repository.documentToProduct(ProductDecodeFixtures.toDocument(bytes))), asMap(decoded));
+        assertEquals("", decoded.getBrand());
+        assertEquals("", decoded.getStore().getName());
+        assertNull(decoded.getCategory());
+    }
+
+    @Test
+    void readsWholeNumberPricesStoredAsIntegers() {
+        Document document = new Document("current_price", 30).append("weight", 500L);
+
+        Product decoded = decode(ProductDecodeFixtures.bytes(document));
+
+        assertEquals(30.0, decoded.getCurrentPrice());
+        assertEquals(500.0, decoded.getWeight());
+    }
+
+    @Test
+    void encodesWhatItDecodes() {
+        Product product = decode(ProductDecodeFixtures.bytes(ProductDecodeFixtures.product()));
+
+        BsonDocument encoded = new BsonDocument();
+        CODEC.encode(new BsonDocumentWriter(encoded), product, EncoderContext.builder().build());
+
+        assertEquals(asMap(product), asMap(CODEC.decode(encoded.asBsonReader(), DecoderContext.builder().build())));
+    }
+
+    private static Product decode(byte[] bytes) {
+        return CODEC.decode(ProductDecodeFixtures.reader(bytes), DecoderContext.builder().build());
+    }
+
+    private static Map<?, ?> asMap(Product product) {
+        return MAPPER.convertValue(product, Map.class);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.tasterj.repository;
+
+import com.example.tasterj.model.Product;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+
+// JMH comparison of the product decode paths on the same raw BSON a query returns:
+// - document: DocumentCodec into a Document, then documentToProduct (the old path)
+// - codec: ProductCodec straight from the reader
+// - codecPriceProjection: ProductCodec on what PRICE_PROJECTION leaves of the document
+// The test runs a short in-process measurement, only when asked for:
+// ./mvnw test -Dtest=ProductDecodeBenchmarkTest -Dbenchmark=true. Run main() for a full forked one;
+// ProductCodecTest covers correctness.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProductDecodeBenchmarkTest {
+
+    private static final DecoderContext CONTEXT = DecoderContext.builder().build();
+
+    private MongoClient mongoClient;
+    private ProductRepository repository;
+    private ProductCodec codec;
+    private byte[] product;
+    private byte[] pricedProduct;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mongoClient = MongoClients.create("mongodb://localhost:1");
+        repository = new ProductRepository(mongoClient, "unused");
+        codec = new ProductCodec();
+
+        Document document = ProductDecodeFixtures.product();
+        product = ProductDecodeFixtures.bytes(document);
+        pricedProduct = ProductDecodeFixtures.bytes(new Document("_id", document.get("_id"))
+                .append("ean", document.get("ean"))
+                .append("store", new Document("code", document.get("store", Document.class).get("code")))
+                .append("current_price", document.get("current_price")));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public Product document() {
+        return repository.documentToProduct(ProductDecodeFixtures.toDocument(product));
+    }
+
+    @Benchmark
+    public Product codec() {
+        return codec.decode(ProductDecodeFixtures.reader(product), CONTEXT);
+    }
+
+    @Benchmark
+    public Product codecPriceProjection() {
+        return codec.decode(ProductDecodeFixtures.reader(pricedProduct), CONTEXT);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void comparesDecodePaths() throws RunnerException {
+        // In-process, since surefire's classpath does not carry over to forked benchmark JVMs
+        new Runner(options(0, 2, 3, TimeValue.milliseconds(500))).run();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(options(1, 3, 5, TimeValue.seconds(1))).run();
+    }
+
+    private static Options options(int forks, int warmups, int iterations, TimeValue time) {
+        return new OptionsBuilder()
+                .include(ProductDecodeBenchmarkTest.class.getName() + "\\.")
+                .forks(forks)
+                .warmupIterations(warmups)
+                .warmupTime(time)
+                .measurementIterations(iterations)
+                .measurementTime(time)
+                .shouldDoGC(true)
+                .build();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.tasterj.repository;
+
+import org.bson.BsonBinaryReader;
+import org.bson.ByteBuf;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// A product as the Kassalapp sync stores it, fields the model never reads included, as raw BSON
+final class ProductDecodeFixtures {
+
+    private ProductDecodeFixtures() {
+    }
+
+    static Document product() {
+        return new Document("_id", new ObjectId("66b1f0c2a4e5d3b2c1a09f87"))
+                .append("ean", "7038010009457")
+                .append("name", "Tine Lettmelk 1% 1 liter")
+                .append("brand", "Tine")
+                .append("vendor", "Tine SA")
+                .append("url", "https://meny.no/varer/meieri/melk/lettmelk-1-7038010009457")
+                .append("image", "https://bilder.kassal.app/7038010009457.jpg")
+                .append("description", "Lettmelk med 1% fett. Pasteurisert og homogenisert.")
+                .append("ingredients", "Lettmelk.")
+                .append("current_price", 22.9)
+                .append("current_unit_price", 22.9)
+                .append("weight", 1000.0)
+                .append("weight_unit", "ml")
+                .append("store", new Document("name", "Meny").append("code", "MENY_NO")
+                        .append("url", "https://meny.no").append("logo", "https://kassal.app/logos/Meny.svg"))
+                .append("category", List.of(
+                        new Document("id", 1).append("depth", 0).append("name", "Meieri"),
+                        new Document("id", 14).append("depth", 1).append("name", "Melk")))
+                .append("allergens", List.of(new Document("code", "melk").append("display_name", "Melk").append("contains", "YES")))
+                .append("nutrition", List.of(
+                        new Document("code", "energi_kcal").append("display_name", "Kalorier").append("amount", 40.0).append("unit", "kcal"),
+                        new Document("code", "fett_totalt").append("display_name", "Fett").append("amount", 1.0).append("unit", "g"),
+                        new Document("code", "protein").append("display_name", "Protein").append("amount", 3.5).append("unit", "g")))
+                .append("labels", List.of(new Document("name", "nyt_norge").append("display_name", "Nyt Norge")))
+                .append("created_at", "2023-02-01T10:12:00.000000Z")
+                .append("updated_at", "2024-08-06T07:01:12.000000Z");
+    }
+
+    static byte[] bytes(Document document) {
+        ByteBuf buffer = new RawBsonDocument(document, new DocumentCodec()).getByteBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    static BsonBinaryReader reader(byte[] bytes) {
+        return new BsonBinaryReader(ByteBuffer.wrap(bytes));
+    }
+
+    static Document toDocument(byte[] bytes) {
+        return new DocumentCodec().decode(reader(bytes), DecoderContext.builder().build());
+    }
+}
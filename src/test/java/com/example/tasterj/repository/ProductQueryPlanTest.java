@@ -0,0 +1,138 @@
+package com.example.tasterj.repository;
+
+import com.example.tasterj.config.ProductIndexInitializer;
+import com.example.tasterj.model.ProductKey;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Explains every products_collection query against the indexes declared in ProductIndexInitializer and
+ * fails when the winning plan falls back to a collection scan.
+ *
+ * Needs a disposable MongoDB:
+ * {@code ./mvnw test -Dtest=ProductQueryPlanTest -Dquery-plan.mongodb.uri=mongodb://localhost:27017}
+ */
+@EnabledIfSystemProperty(named = "query-plan.mongodb.uri", matches = ".+")
+class ProductQueryPlanTest {
+
+    private static final String DATABASE = "tasterj_query_plans";
+    private static final String[] STORES = {"MENY_NO", "SPAR_NO", "KIWI", "ODA_NO", "JOKER_NO"};
+    private static final String[] BRANDS = {"Tine", "Prior", "Gilde", "First Price", "Bama"};
+
+    private static MongoClient mongoClient;
+    private static MongoDatabase database;
+    private static MongoCollection<Document> collection;
+
+    @BeforeAll
+    static void seed() {
+        mongoClient = MongoClients.create(System.getProperty("query-plan.mongodb.uri"));
+        database = mongoClient.getDatabase(DATABASE);
+        database.drop();
+        collection = database.getCollection("products_collection");
+
+        // Enough documents that the planner has a real choice between the indexes and a scan
+        List<Document> products = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            String store = STORES[i % STORES.length];
+            products.add(new Document("ean", String.valueOf(7_000_000_000_000L + i / STORES.length))
+                    .append("name", "Vare " + i)
+                    .append("brand", BRANDS[i % BRANDS.length])
+                    .append("current_price", 5.0 + i % 200)
+                    .append("category", List.of(new Document("id", i % 40).append("depth", 0).append("name", "Kategori " + i % 40)))
+                    .append("store", new Document("name", store).append("code", store)));
+        }
+        collection.insertMany(products, new InsertManyOptions().ordered(false));
+
+        new ProductIndexInitializer(mongoClient, DATABASE).reconcile();
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        if (mongoClient != null) {
+            database.drop();
+            mongoClient.close();
+        }
+    }
+
+    @Test
+    void reconcileIsIdempotent() {
+        new ProductIndexInitializer(mongoClient, DATABASE).reconcile();
+
+        List<String> names = new ArrayList<>();
+        for (Document index : collection.listIndexes()) {
+            names.add(index.getString("name"));
+        }
+        assertTrue(names.containsAll(List.of("ean_store_price", "store_code_price", "brand", "name", "category_name", "store_name")), names.toString());
+    }
+
+    @Test
+    void repositoryQueriesUseAnIndex() {
+        Map<String, Bson> queries = Map.of(
+                "findByEan", ProductRepository.eanFilter("7000000000042"),
+                "findByNameContaining", ProductRepository.nameContainingFilter("vare 4"),
+                "findByStoreCode", ProductRepository.storeCodeFilter("KIWI"),
+                "findByEanAndStoreCode", ProductRepository.eanAndStoreCodeFilter("7000000000042", "KIWI"),
+                "findByEanAndStoreCodes", ProductRepository.eanAndStoreCodesFilter(List.of(
+                        new ProductKey("7000000000042", "KIWI"), new ProductKey("7000000000043", "MENY_NO"))),
+                "search by word", ProductRepository.searchFilter(List.of("kategori"), null, null, null),
+                "search by word and brand", ProductRepository.searchFilter(List.of("vare"), "brand", "Tine", null),
+                "search by word in stores", ProductRepository.searchFilter(List.of("vare"), null, null, List.of("KIWI", "MENY_NO")));
+
+        queries.forEach((query, filter) -> assertNoCollectionScan(query, explainFind(filter)));
+    }
+
+    private Document explainFind(Bson filter) {
+        return database.runCommand(new Document("explain", new Document("find", "products_collection")
+                .append("filter", toBsonDocument(filter)))
+                .append("verbosity", "queryPlanner"));
+    }
+
+    private void assertNoCollectionScan(String query, Document explain) {
+        Document queryPlanner = explain.get("queryPlanner", Document.class);
+        Document winningPlan = queryPlanner.get("winningPlan", Document.class);
+        // Plans executed by the slot-based engine nest the classic plan tree under queryPlan
+        Document plan = winningPlan.containsKey("queryPlan") ? winningPlan.get("queryPlan", Document.class) : winningPlan;
+
+        List<String> stages = new ArrayList<>();
+        collectStages(plan, stages);
+        assertFalse(stages.contains("COLLSCAN"), query + " falls back to a collection scan: " + stages);
+        assertTrue(stages.stream().anyMatch(stage -> stage.equals("IXSCAN") || stage.equals("DISTINCT_SCAN") || stage.equals("IDHACK")),
+                query + " uses no index: " + stages);
+    }
+
+    private void collectStages(Object node, List<String> stages) {
+        if (node instanceof Document document) {
+            if (document.get("stage") instanceof String stage) {
+                stages.add(stage);
+            }
+            for (Object child : document.values()) {
+                collectStages(child, stages);
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object child : list) {
+                collectStages(child, stages);
+            }
+        }
+    }
+
+    private BsonDocument toBsonDocument(Bson filter) {
+        return filter.toBsonDocument(BsonDocument.class, collection.getCodecRegistry());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.tasterj.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RecipeSearchRepositoryImplTest {
+
+    @Test
+    void matchesEveryWordAsAPrefix() {
+        assertEquals("kyllinggryte:* & med:* & ris:*", RecipeSearchRepositoryImpl.toPrefixQuery("Kyllinggryte med ris"));
+    }
+
+    @Test
+    void keepsNorwegianLettersForTheStemmer() {
+        assertEquals("blåbærsyltetøy:*", RecipeSearchRepositoryImpl.toPrefixQuery("Blåbærsyltetøy"));
+    }
+
+    @Test
+    void dropsTsqueryOperators() {
+        assertEquals("taco:* & fredag:*", RecipeSearchRepositoryImpl.toPrefixQuery("taco & !fredag:* | ('"));
+    }
+
+    @Test
+    void hasNoQueryWithoutWords() {
+        assertNull(RecipeSearchRepositoryImpl.toPrefixQuery("  -- "));
+        assertNull(RecipeSearchRepositoryImpl.toPrefixQuery(null));
+    }
+
+    @Test
+    void stopwordOnlyQueriesFallBackToASubstringPattern() {
+        // "med" and "og" are Norwegian stopwords, so their tsquery is empty and the substring match is used
+        assertEquals("%med%", RecipeSearchRepositoryImpl.toSubstringPattern("Med"));
+        assertEquals("%med%og%", RecipeSearchRepositoryImpl.toSubstringPattern(" med & og%_ "));
+        assertNull(RecipeSearchRepositoryImpl.toSubstringPattern("%_"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.tasterj.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Only the brands.json and vendors.json entries; the client is never connected because refresh() is not called
+class BrandDictionaryTest {
+
+    private static MongoClient mongoClient;
+    private static BrandDictionary dictionary;
+
+    @BeforeAll
+    static void load() {
+        mongoClient = MongoClients.create("mongodb://localhost:1");
+        dictionary = new BrandDictionary(new ObjectMapper(), mongoClient, "unused");
+    }
+
+    @AfterAll
+    static void close() {
+        mongoClient.close();
+    }
+
+    @Test
+    void findsTheLongestBrandInTheQuery() {
+        BrandDictionary.Match match = dictionary.detect(List.of("kyllingfilet", "first", "price"));
+
+        assertEquals(BrandDictionary.BRAND_FIELD, match.getField());
+        assertEquals("First price", match.getValue());
+        assertEquals(1, match.getFirstWord());
+        assertEquals(3, match.getLastWord());
+    }
+
+    @Test
+    void matchesWholeWordsOnly() {
+        assertNull(dictionary.detect(List.of("tinemelk")));
+        assertNull(dictionary.detect(List.of("melk")));
+
+        BrandDictionary.Match match = dictionary.detect(List.of("q-meieriene", "yoghurt"));
+        assertEquals(0, match.getFirstWord());
+        assertEquals(1, match.getLastWord());
+    }
+
+    @Test
+    void prefersALongerVendorOverAShorterBrand() {
+        BrandDictionary.Match match = dictionary.detect(List.of("lerøy", "seafood", "laks"));
+
+        assertEquals(BrandDictionary.VENDOR_FIELD, match.getField());
+        assertEquals("lerøy seafood", match.getValue());
+        assertEquals(2, match.getLastWord());
+
+        assertEquals(BrandDictionary.BRAND_FIELD, dictionary.detect(List.of("lerøy", "laks")).getField());
+    }
+
+    // The value is matched by containment against the stored vendor, so it keeps the vendor's punctuation
+    @Test
+    void vendorValuesKeepTheirPunctuation() {
+        BrandDictionary.Match match = dictionary.detect(List.of("rema", "1000", "norge", "as", "lev", "melk"));
+        assertEquals(BrandDictionary.VENDOR_FIELD, match.getField());
+        assertEquals("rema 1000 norge as (lev", match.getValue());
+        assertTrue("rema 1000 norge as (lev.)".contains(match.getValue()));
+
+        match = dictionary.detect(List.of("kjøtt-pølser", "løsvekt"));
+        assertEquals(BrandDictionary.VENDOR_FIELD, match.getField());
+        assertEquals("kjøtt/pølser løsvekt", match.getValue());
+
+        // Q-Meieriene is detected as its brand, its vendor entry still has to match the stored vendor
+        assertEquals("q-meieriene", BrandDictionary.lowercasePrefix("Q-MEIERIENE AS", 2));
+        assertEquals("nortura sa (prior", BrandDictionary.lowercasePrefix("NORTURA SA (PRIOR)", 3));
+    }
+}
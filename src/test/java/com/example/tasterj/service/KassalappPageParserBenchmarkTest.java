@@ -0,0 +1,118 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.model.Product;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Compares bytes allocated per recorded page by the old tree-based parser and the streaming parser. The
+// default run takes a few rounds, enough to tell them apart; the longer measurement only runs when asked for:
+// ./mvnw test -Dtest=KassalappPageParserBenchmarkTest -Dbenchmark=true
+class KassalappPageParserBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+    // Products of the recorded page the default run keeps
+    private static final int PRODUCTS = 10;
+    private static final int BENCHMARK_WARMUP_ROUNDS = 200;
+    private static final int BENCHMARK_MEASURED_ROUNDS = 500;
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void streamingParserAllocatesLessThanTreeParser() throws IOException {
+        compare(firstProducts(readRecordedPage("kassalapp/products-page-1.json"), PRODUCTS), PRODUCTS,
+                WARMUP_ROUNDS, MEASURED_ROUNDS);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void streamingParserAllocationBenchmark() throws IOException {
+        compare(readRecordedPage("kassalapp/products-page-1.json"), 100, BENCHMARK_WARMUP_ROUNDS, BENCHMARK_MEASURED_ROUNDS);
+    }
+
+    private void compare(byte[] page, int products, int warmupRounds, int measuredRounds) throws IOException {
+        KassalappPageParser parser = new KassalappPageParser(new ObjectMapper());
+
+        List<Document> streamed = new ArrayList<>();
+        assertEquals(products, parser.parse(new ByteArrayInputStream(page), streamed::add));
+        assertEquals(products, streamed.size());
+        assertEquals(legacyParse(page).size(), streamed.size());
+
+        long legacyBytes = measure(() -> legacyParse(page).size(), warmupRounds, measuredRounds);
+        long streamingBytes = measure(() -> parser.parse(new ByteArrayInputStream(page), product -> { }),
+                warmupRounds, measuredRounds);
+
+        System.out.printf("Kassalapp page parse, bytes allocated per page: tree=%d, streaming=%d (%.1fx less)%n",
+                legacyBytes, streamingBytes, (double) legacyBytes / streamingBytes);
+
+        assertTrue(streamingBytes < legacyBytes,
+                "Streaming parser allocated " + streamingBytes + " bytes per page, tree parser " + legacyBytes);
+    }
+
+    // The parse path ProductDataService used before: body as String, JsonNode tree, then convertValue
+    private List<Product> legacyParse(byte[] page) throws IOException {
+        String productsJson = new String(page, StandardCharsets.UTF_8);
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode dataNode = objectMapper.readTree(productsJson).get("data");
+        return objectMapper.convertValue(dataNode, new TypeReference<List<Product>>() {});
+    }
+
+    private long measure(ParseRound round, int warmupRounds, int measuredRounds) throws IOException {
+        int sink = 0;
+        for (int i = 0; i < warmupRounds; i++) {
+            sink += round.run();
+        }
+
+        long before = threadBean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < measuredRounds; i++) {
+            sink += round.run();
+        }
+        long allocated = threadBean.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(sink > 0);
+        return allocated / measuredRounds;
+    }
+
+    // The page with only its first products in data
+    private static byte[] firstProducts(byte[] page, int products) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode root = (ObjectNode) objectMapper.readTree(page);
+        ArrayNode data = (ArrayNode) root.get("data");
+        while (data.size() > products) {
+            data.remove(data.size() - 1);
+        }
+        return objectMapper.writeValueAsBytes(root);
+    }
+
+    private byte[] readRecordedPage(String path) throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IOException("Missing recorded page " + path);
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ParseRound {
+        int run() throws IOException;
+    }
+}
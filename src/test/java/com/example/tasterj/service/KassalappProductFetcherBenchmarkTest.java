@@ -0,0 +1,53 @@
+package com.example.tasterj.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Fetch and parse stages against the local Kassalapp stand-in; needs no MongoDB or API key
+class KassalappProductFetcherBenchmarkTest {
+
+    @Test
+    void fetchesEveryPageThroughLatencyAndThrottling() throws Exception {
+        int products = 5_000;
+
+        try (KassalappStandInServer server = KassalappStandInServer.synthetic(products, 10, 20, 0)) {
+            KassalappProductFetcher fetcher = fetcher(server.getProductUrl());
+            AtomicLong parsed = new AtomicLong();
+
+            long start = System.nanoTime();
+            KassalappProductFetcher.FetchResult result = fetcher.fetchAll(1, product -> parsed.incrementAndGet());
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            System.out.printf("Stand-in fetch: %d products in %.2f s (%.0f products/sec), %d requests, %d throttled, %s%n",
+                    parsed.get(), seconds, parsed.get() / seconds, server.getRequests(), server.getThrottled(), result);
+
+            assertTrue(result.isComplete(), result.toString());
+            assertEquals(products, parsed.get());
+            assertEquals(products / 100 + 1, result.getLastPage());
+            assertTrue(result.getRetries() >= server.getThrottled());
+        }
+    }
+
+    @Test
+    void parsesRecordedPages() throws Exception {
+        try (KassalappStandInServer server = KassalappStandInServer.recorded("kassalapp", 0, 0)) {
+            AtomicLong parsed = new AtomicLong();
+            KassalappProductFetcher.FetchResult result = fetcher(server.getProductUrl()).fetchAll(1, product -> parsed.incrementAndGet());
+
+            assertTrue(result.isComplete(), result.toString());
+            assertEquals(137, parsed.get());
+            assertEquals(2, result.getLastPage());
+        }
+    }
+
+    private KassalappProductFetcher fetcher(String productUrl) {
+        return new KassalappProductFetcher(new RestTemplate(), new KassalappPageParser(new ObjectMapper()),
+                productUrl, "stand-in", 100_000, 8, 5, 10);
+    }
+}
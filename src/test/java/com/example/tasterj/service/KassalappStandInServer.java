@@ -0,0 +1,248 @@
+package com.example.tasterj.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for GET /api/v1/products?page=N&size=100 on kassal.app.
+ *
+ * Serves either recorded pages from the test classpath or a synthetic catalog of any size, with optional
+ * latency and injected 429 responses. Run main() to use it outside the tests, for example
+ * {@code --port 8089 --products 50000 --latency-ms 40 --throttle-every 25}, and point kassalapp.url at
+ * http://localhost:8089/api/v1/products.
+ */
+public class KassalappStandInServer implements AutoCloseable {
+
+    private static final String PATH = "/api/v1/products";
+    private static final String[] STORES = {"MENY_NO", "SPAR_NO", "KIWI", "ODA_NO", "JOKER_NO"};
+    private static final String[] NAMES = {"Lettmelk 1%", "Kyllingfilet", "Kjøttdeig av storfe", "Grovbrød", "Norvegia",
+            "Laksefilet", "Smør usaltet", "Egg 12pk", "Bananer", "Leverpostei", "Fårikålkrydder", "Mjølk"};
+    private static final String[] BRANDS = {"Tine", "Prior", "Gilde", "Bakehuset", "Synnøve", "Lerøy", "First Price", "Bama"};
+
+    private final HttpServer server;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Map<Integer, byte[]> recordedPages;
+    private final int syntheticProducts;
+    private final long latencyMillis;
+    private final int throttleEvery;
+    private final int priceGeneration;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    private KassalappStandInServer(int port, Map<Integer, byte[]> recordedPages, int syntheticProducts,
+                                   long latencyMillis, int throttleEvery, int priceGeneration) throws IOException {
+        this.recordedPages = recordedPages;
+        this.syntheticProducts = syntheticProducts;
+        this.latencyMillis = latencyMillis;
+        this.throttleEvery = throttleEvery;
+        this.priceGeneration = priceGeneration;
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.createContext(PATH, this::handle);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.start();
+    }
+
+    // Serves products-page-1.json, products-page-2.json, ... from the given classpath directory
+    public static KassalappStandInServer recorded(String classpathDirectory, long latencyMillis, int throttleEvery) throws IOException {
+        Map<Integer, byte[]> pages = new HashMap<>();
+        for (int page = 1; ; page++) {
+            String resource = classpathDirectory + "/products-page-" + page + ".json";
+            try (InputStream in = KassalappStandInServer.class.getClassLoader().getResourceAsStream(resource)) {
+                if (in == null) {
+                    break;
+                }
+                pages.put(page, in.readAllBytes());
+            }
+        }
+        return new KassalappStandInServer(0, pages, 0, latencyMillis, throttleEvery, 0);
+    }
+
+    // Serves a deterministic catalog of the given size. Changing priceGeneration changes every 10th price,
+    // which lets a second run exercise the delta sync.
+    public static KassalappStandInServer synthetic(int products, long latencyMillis, int throttleEvery, int priceGeneration) throws IOException {
+        return synthetic(0, products, latencyMillis, throttleEvery, priceGeneration);
+    }
+
+    private static KassalappStandInServer synthetic(int port, int products, long latencyMillis, int throttleEvery, int priceGeneration) throws IOException {
+        return new KassalappStandInServer(port, null, products, latencyMillis, throttleEvery, priceGeneration);
+    }
+
+    public String getProductUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + PATH;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long request = requests.incrementAndGet();
+            sleep(latencyMillis);
+
+            if (throttleEvery > 0 && request % throttleEvery == 0) {
+                throttled.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+
+            Map<String, String> query = parseQuery(exchange.getRequestURI());
+            int page = Integer.parseInt(query.getOrDefault("page", "1"));
+            int size = Integer.parseInt(query.getOrDefault("size", "100"));
+
+            byte[] body = recordedPages != null ? recordedPage(page) : syntheticPage(page, size);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private byte[] recordedPage(int page) throws IOException {
+        byte[] recorded = recordedPages.get(page);
+        return recorded != null ? recorded : emptyPage(page);
+    }
+
+    private byte[] emptyPage(int page) throws IOException {
+        return syntheticPage(page, 0);
+    }
+
+    private byte[] syntheticPage(int page, int size) throws IOException {
+        int first = (page - 1) * size;
+        int last = Math.min(syntheticProducts, first + size);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        try (JsonGenerator json = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("data");
+            for (int i = first; i < last; i++) {
+                writeProduct(json, i);
+            }
+            json.writeEndArray();
+            json.writeObjectFieldStart("meta");
+            json.writeNumberField("current_page", page);
+            json.writeNumberField("per_page", size);
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private void writeProduct(JsonGenerator json, int i) throws IOException {
+        String store = STORES[i % STORES.length];
+        String ean = String.valueOf(7_000_000_000_000L + i / STORES.length);
+        double price = 10 + (i * 37 % 1500) / 10.0 + (i % 10 == 0 ? priceGeneration : 0);
+
+        json.writeStartObject();
+        json.writeNumberField("id", i);
+        json.writeStringField("ean", ean);
+        json.writeStringField("name", NAMES[i % NAMES.length] + " " + (i % 500));
+        json.writeStringField("brand", BRANDS[i % BRANDS.length]);
+        json.writeStringField("vendor", BRANDS[i % BRANDS.length] + " AS");
+        json.writeStringField("url", "https://example.invalid/" + store + "/" + ean);
+        json.writeStringField("image", "https://example.invalid/images/" + ean + ".jpg");
+        json.writeStringField("description", "Syntetisk vare " + i + " for lokal ytelsestesting.");
+        json.writeNumberField("current_price", price);
+        json.writeNumberField("current_unit_price", price * 2);
+        json.writeNumberField("weight", 500);
+        json.writeStringField("weight_unit", "g");
+        json.writeArrayFieldStart("category");
+        json.writeStartObject();
+        json.writeNumberField("id", i % 40);
+        json.writeNumberField("depth", 0);
+        json.writeStringField("name", "Kategori " + (i % 40));
+        json.writeEndObject();
+        json.writeEndArray();
+        json.writeObjectFieldStart("store");
+        json.writeStringField("name", store);
+        json.writeStringField("code", store);
+        json.writeStringField("url", "https://example.invalid/" + store);
+        json.writeStringField("logo", "https://example.invalid/" + store + ".svg");
+        json.writeEndObject();
+        json.writeArrayFieldStart("price_history");
+        for (int day = 1; day <= 5; day++) {
+            json.writeStartObject();
+            json.writeNumberField("price", price);
+            json.writeStringField("date", "2024-09-0" + day + "T00:00:00.000000Z");
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    private Map<String, String> parseQuery(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        if (uri.getRawQuery() == null) {
+            return query;
+        }
+        for (String pair : uri.getRawQuery().split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        return query;
+    }
+
+    private void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            // +/- 25% jitter so concurrent requests do not complete in lockstep
+            long jitter = millis / 4;
+            TimeUnit.MILLISECONDS.sleep(millis - jitter + ThreadLocalRandom.current().nextLong(2 * jitter + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8089;
+        int products = 20_000;
+        long latency = 0;
+        int throttleEvery = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                case "--products" -> products = Integer.parseInt(args[i + 1]);
+                case "--latency-ms" -> latency = Long.parseLong(args[i + 1]);
+                case "--throttle-every" -> throttleEvery = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        KassalappStandInServer server = synthetic(port, products, latency, throttleEvery, 0);
+        System.out.println("Kassalapp stand-in serving " + products + " products at " + server.getProductUrl());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.tasterj.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PageWatermarkTest {
+
+    @Test
+    void advancesOverPagesFinishedInOrder() {
+        PageWatermark watermark = new PageWatermark(0);
+
+        assertEquals(1, watermark.finish(1));
+        assertEquals(2, watermark.finish(2));
+    }
+
+    @Test
+    void holdsAtAGapUntilItIsFilled() {
+        PageWatermark watermark = new PageWatermark(0);
+
+        assertEquals(1, watermark.finish(1));
+        assertEquals(1, watermark.finish(3));
+        assertEquals(1, watermark.finish(4));
+        assertEquals(4, watermark.finish(2));
+        assertEquals(4, watermark.get());
+    }
+
+    @Test
+    void resumesFromTheCheckpointedPage() {
+        PageWatermark watermark = new PageWatermark(40);
+
+        assertEquals(40, watermark.finish(42));
+        assertEquals(42, watermark.finish(41));
+    }
+
+    @Test
+    void pagesUpToTheWatermarkDoNotMoveIt() {
+        PageWatermark watermark = new PageWatermark(5);
+
+        assertEquals(5, watermark.finish(3));
+        assertEquals(5, watermark.finish(5));
+        assertEquals(6, watermark.finish(6));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.tasterj.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Only failures a retry can get past are retried, the others are counted as failed at once
+class ProductBulkWriterTest {
+
+    @Test
+    void documentErrorsAreNotRetried() {
+        assertFalse(ProductBulkWriter.isTransient(11000));
+        assertFalse(ProductBulkWriter.isTransient(121));
+        assertTrue(ProductBulkWriter.isTransient(89));
+        assertTrue(ProductBulkWriter.isTransient(189));
+    }
+
+    @Test
+    void networkErrorsAreRetried() {
+        assertTrue(ProductBulkWriter.isTransient(new MongoSocketReadException("Connection reset", new ServerAddress())));
+    }
+
+    @Test
+    void retryableLabelIsRetried() {
+        MongoException labelled = new MongoException("Write failed");
+        labelled.addLabel("RetryableWriteError");
+
+        assertTrue(ProductBulkWriter.isTransient(labelled));
+        assertFalse(ProductBulkWriter.isTransient(new MongoException("Write failed")));
+    }
+
+    @Test
+    void commandErrorsAreRetriedByCode() {
+        assertTrue(ProductBulkWriter.isTransient(commandError(10107)));
+        assertFalse(ProductBulkWriter.isTransient(commandError(121)));
+    }
+
+    private static MongoCommandException commandError(int code) {
+        BsonDocument response = new BsonDocument("ok", new BsonInt32(0))
+                .append("code", new BsonInt32(code))
+                .append("errmsg", new BsonString("failed"));
+        return new MongoCommandException(response, new ServerAddress());
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.model.ProductKey;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductChangeDetectorTest {
+
+    private final ProductChangeDetector detector = new ProductChangeDetector();
+
+    @Test
+    void productNotStoredBeforeIsNew() {
+        assertEquals(ProductChangeDetector.Change.NEW, detector.classify(product("7038010009457", "Lettmelk", 21.9)));
+
+        assertEquals(1, detector.getNewProducts());
+        assertEquals(1, detector.getPriceChanges());
+        assertEquals(Set.of(new ProductKey("7038010009457", "MENY_NO")), detector.getPriceChangedKeys());
+    }
+
+    @Test
+    void sameContentIsUnchanged() {
+        remember(product("7038010009457", "Lettmelk", 21.9));
+
+        assertEquals(ProductChangeDetector.Change.UNCHANGED, detector.classify(product("7038010009457", "Lettmelk", 21.9)));
+        assertEquals(1, detector.getUnchangedProducts());
+        assertEquals(0, detector.getPriceChanges());
+    }
+
+    @Test
+    void otherContentAtTheSamePriceIsChanged() {
+        remember(product("7038010009457", "Lettmelk", 21.9));
+
+        assertEquals(ProductChangeDetector.Change.CHANGED, detector.classify(product("7038010009457", "Lettmelk 1 l", 21.9)));
+        assertEquals(1, detector.getChangedProducts());
+        assertEquals(Set.of(), detector.getPriceChangedKeys());
+    }
+
+    @Test
+    void otherPriceIsAPriceChange() {
+        remember(product("7038010009457", "Lettmelk", 21.9));
+
+        assertEquals(ProductChangeDetector.Change.PRICE_CHANGED, detector.classify(product("7038010009457", "Lettmelk", 23.5)));
+        assertEquals(1, detector.getChangedProducts());
+        assertEquals(1, detector.getPriceChanges());
+    }
+
+    @Test
+    void documentWithoutAStoredHashIsAPriceChange() {
+        // Written before hashing was introduced; the price alone cannot tell whether it changed since
+        detector.remember("7038010009457", "MENY_NO", "", 21.9);
+
+        assertEquals(ProductChangeDetector.Change.PRICE_CHANGED, detector.classify(product("7038010009457", "Lettmelk", 21.9)));
+    }
+
+    @Test
+    void storedProductsNotSeenAreRemoved() {
+        remember(product("7038010009457", "Lettmelk", 21.9));
+        remember(product("7020655860037", "Hvetemel", 34.5));
+        remember(product("7039610000318", "Egg", 52.9));
+
+        detector.classify(product("7038010009457", "Lettmelk", 21.9));
+        detector.classify(product("7040513000014", "Smør", 44.9));
+
+        assertEquals(2, detector.getRemovedProducts());
+    }
+
+    // Stores a product with the hash a classifying run stamps on it
+    private void remember(Document product) {
+        new ProductChangeDetector().classify(product);
+        detector.remember(product.getString("ean"), product.get("store", Document.class).getString("code"),
+                product.getString(ProductChangeDetector.HASH_FIELD), product.getDouble("current_price"));
+    }
+
+    private static Document product(String ean, String name, double price) {
+        return new Document("ean", ean)
+                .append("name", name)
+                .append("current_price", price)
+                .append("store", new Document("code", "MENY_NO"));
+    }
+}
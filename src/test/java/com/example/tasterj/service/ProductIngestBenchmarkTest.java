@@ -0,0 +1,143 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.config.MongoConfig;
+import com.example.tasterj.model.IngestCheckpoint;
+import com.example.tasterj.repository.IngestCheckpointRepository;
+import com.example.tasterj.repository.MigrationStateRepository;
+import com.example.tasterj.repository.ProductPriceHistoryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.client.RestTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Full fetch, parse and write pipeline against the Kassalapp stand-in and a local MongoDB.
+ *
+ * Writes to a throwaway database, so point it at a disposable MongoDB:
+ * {@code ./mvnw test -Dtest=ProductIngestBenchmarkTest -Dbenchmark.mongodb.uri=mongodb://localhost:27017}
+ */
+@EnabledIfSystemProperty(named = "benchmark.mongodb.uri", matches = ".+")
+@SpringBootTest(classes = {
+        MongoConfig.class,
+        ProductDataService.class,
+        ProductBulkWriter.class,
+        KassalappPageParser.class,
+        KassalappProductFetcher.class,
+        ProductIdMigration.class,
+        ProductCatalogGeneration.class,
+        IngestCheckpointRepository.class,
+        ProductPriceHistoryRepository.class,
+        MigrationStateRepository.class,
+        ProductIngestBenchmarkTest.BenchmarkConfig.class})
+class ProductIngestBenchmarkTest {
+
+    private static final String DATABASE = "tasterj_ingest_benchmark";
+    private static final int PRODUCTS = 20_000;
+
+    private static KassalappStandInServer server;
+
+    @Autowired
+    private ProductDataService productDataService;
+
+    @Autowired
+    private IngestCheckpointRepository ingestCheckpointRepository;
+
+    @Autowired
+    private MongoClient mongoClient;
+
+    @TestConfiguration
+    static class BenchmarkConfig {
+
+        @Bean
+        RestTemplate restTemplate() {
+            return new RestTemplate();
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+
+    @BeforeAll
+    static void startStandIn() throws Exception {
+        server = KassalappStandInServer.synthetic(PRODUCTS, 20, 50, 0);
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("mongodb.uri", () -> System.getProperty("benchmark.mongodb.uri"));
+        registry.add("mongodb.database", () -> DATABASE);
+        registry.add("kassalapp.url", () -> server.getProductUrl());
+        registry.add("kassalapp.api", () -> "benchmark");
+        registry.add("kassalapp.rate-limit", () -> "100000");
+        registry.add("kassalapp.fetch.retry-backoff-ms", () -> "50");
+    }
+
+    @Test
+    void fullAndDeltaSync() {
+        mongoClient.getDatabase(DATABASE).drop();
+
+        Run full = measure("full sync");
+        Run delta = measure("delta sync, nothing changed");
+
+        IngestCheckpoint checkpoint = ingestCheckpointRepository.findById("kassalapp-products").orElseThrow();
+        assertEquals(IngestCheckpoint.COMPLETED, checkpoint.getStatus());
+        assertEquals(PRODUCTS, checkpoint.getUnchangedProducts());
+        assertEquals(PRODUCTS, mongoClient.getDatabase(DATABASE).getCollection("products_collection").countDocuments());
+        assertTrue(delta.seconds > 0 && full.seconds > 0);
+    }
+
+    private Run measure(String label) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+
+        long start = System.nanoTime();
+        productDataService.fetchAndSaveProducts();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        System.out.printf("Ingest benchmark, %s: %d products in %.2f s wall time, %.0f products/sec, peak heap %d MB%n",
+                label, PRODUCTS, seconds, PRODUCTS / seconds, peakHeap / (1024 * 1024));
+        return new Run(seconds);
+    }
+
+    private static class Run {
+
+        private final double seconds;
+
+        private Run(double seconds) {
+            this.seconds = seconds;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.model.Product;
+import com.example.tasterj.repository.ProductCodec;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// The streamed JSON must be the product maps the endpoints returned before they streamed
+class ProductJsonWriterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void writesWhatTheProductMapHeld() throws IOException {
+        Document product = new Document("_id", new ObjectId("66b1f0c2a4e5d3b2c1a09f87"))
+                .append("ean", "7038010009457")
+                .append("name", "Tine Lettmelk 1% 1l")
+                .append("brand", "Tine")
+                .append("vendor", "Tine SA")
+                .append("description", "Lettmelk")
+                .append("current_price", 22.9)
+                .append("current_unit_price", 22.9)
+                .append("weight", 1)
+                .append("weight_unit", "l")
+                .append("price_history", List.of(new Document("price", 21.9)))
+                .append("store", new Document("name", "Meny").append("code", "MENY_NO").append("extra", true))
+                .append("category", List.of(
+                        new Document("id", 1).append("depth", 1).append("name", "Meieri"),
+                        new Document("id", 12).append("depth", 2).append("name", "Melk")));
+
+        assertEquals(productMap(product), written(product));
+    }
+
+    @Test
+    void writesDefaultsForMissingFields() throws IOException {
+        Document product = new Document("_id", "legacy-id").append("current_price", 30);
+
+        Map<?, ?> written = written(product);
+
+        assertEquals(productMap(product), written);
+        assertEquals("", written.get("brand"));
+        assertEquals(30.0, written.get("current_price"));
+        assertFalse(written.containsKey("store"));
+    }
+
+    @Test
+    void leavesOutEmptyCategories() throws IOException {
+        Document product = new Document("_id", "legacy-id").append("category", List.of());
+
+        assertFalse(written(product).containsKey("category"));
+    }
+
+    private static Map<?, ?> written(Document product) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = MAPPER.getFactory().createGenerator(out)) {
+            ProductJsonWriter.write(RawBsonDocument.parse(product.toJson()), json);
+        }
+        return MAPPER.readValue(out.toByteArray(), Map.class);
+    }
+
+    // The map the endpoints built from the decoded product
+    private static Map<?, ?> productMap(Document document) {
+        RawBsonDocument raw = RawBsonDocument.parse(document.toJson());
+        Product product = new ProductCodec().decode(raw.asBsonReader(), DecoderContext.builder().build());
+
+        Map<String, Object> productMap = new HashMap<>();
+        productMap.put("id", product.getId());
+        productMap.put("ean", product.getEan());
+        productMap.put("name", product.getName());
+        productMap.put("brand", product.getBrand());
+        productMap.put("vendor", product.getVendor());
+        productMap.put("url", product.getUrl());
+        productMap.put("image", product.getImage());
+        productMap.put("description", product.getDescription());
+        productMap.put("current_price", product.getCurrentPrice());
+        productMap.put("current_unit_price", product.getCurrentUnitPrice());
+        productMap.put("weight", product.getWeight());
+        productMap.put("weight_unit", product.getWeightUnit());
+        if (product.getStore() != null) {
+            productMap.put("store", Map.of("name", product.getStore().getName(), "code", product.getStore().getCode(),
+                    "url", product.getStore().getUrl(), "logo", product.getStore().getLogo()));
+        }
+        if (product.getCategory() != null && !product.getCategory().isEmpty()) {
+            List<Map<String, Object>> categoryList = new ArrayList<>();
+            for (Product.Category category : product.getCategory()) {
+                categoryList.add(Map.of("id", category.getId(), "depth", category.getDepth(), "name", category.getName()));
+            }
+            productMap.put("category", categoryList);
+        }
+        // Through JSON, as the endpoints returned it
+        return MAPPER.convertValue(productMap, Map.class);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.tasterj.service;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The in-memory index checked against a brute-force scan with the semantics of ProductRepository.searchFilter,
+// and its search latency at full catalog size when asked for
+class ProductSearchIndexBenchmarkTest {
+
+    private static final String[] STORES = {"Meny", "Spar", "Kiwi", "Oda", "Joker", "Rema 1000", "Coop Extra", "Bunnpris"};
+    private static final String[] BRANDS = {"Tine", "Prior", "Gilde", "First Price", "Synnøve", "Lerøy", "Bama", "Q-Meieriene"};
+    private static final String[] NAMES = {"Lettmelk 1%", "Kyllingfilet", "Kjøttdeig av storfe", "Grovbrød", "Norvegia",
+            "Laksefilet", "Smør usaltet", "Egg 12pk", "Bananer", "Leverpostei", "Fårikålkrydder", "Crème fraîche", "Helmelk",
+            "Yoghurt jordbær", "Pizza grandiosa", "Blåbær frosne", "Tomater på boks", "Spaghetti", "Havregryn", "Kaffe filtermalt"};
+    private static final String[] CATEGORIES = {"Meieri", "Kjøtt", "Fisk", "Brød og bakevarer", "Frukt og grønt", "Frysevarer", "Tørrvarer"};
+
+    private static final List<List<String>> QUERIES = List.of(
+            List.of("melk"), List.of("kylling"), List.of("laks", "filet"), List.of("creme"), List.of("bla"),
+            List.of("k"), List.of("pizza"), List.of("kjøtt"), List.of("smør"), List.of("egg", "12pk"), List.of("frys"),
+            List.of("ost"), List.of("grov", "brod"), List.of("yoghurt"), List.of("x"));
+
+    private static final List<List<String>> TYPO_QUERIES = List.of(
+            List.of("kylingfilet"), List.of("kjøtdeig"), List.of("leverpostei"), List.of("spagetti"), List.of("yogurt"),
+            List.of("laksfilet"), List.of("grandiosa", "piza"), List.of("havregrynn"));
+
+    @Test
+    void matchesWhatTheBruteForceScanFinds() {
+        List<Document> catalog = catalog(20_000);
+        ProductSearchIndex.Snapshot index = ProductSearchIndex.Snapshot.build(catalog, 0);
+
+        for (List<String> words : QUERIES) {
+            assertEquals(bruteForce(catalog, words, null, null), index.match(words, null, null, null).count(), words.toString());
+            assertEquals(bruteForce(catalog, words, "tine", List.of("Kiwi", "Meny")),
+                    index.match(words, "brand", "tine", List.of("Kiwi", "Meny")).count(), words + " at Tine in Kiwi, Meny");
+        }
+
+        // Walking the cursors visits exactly the matches the page numbers do
+        ProductSearchIndex.Matches matches = index.match(List.of("melk"), null, null, null);
+        List<Object> walked = new ArrayList<>();
+        List<Object> page = matches.page(0, 500);
+        while (!page.isEmpty()) {
+            walked.addAll(page);
+            SearchCursor cursor = SearchCursor.decode(matches.cursorAfter(page.get(page.size() - 1)).encode());
+            page = matches.after(cursor, 500);
+        }
+        assertEquals(matches.page(0, matches.count()), walked);
+
+        // Misspelled and compound words take the trigram and edit distance path instead
+        for (List<String> words : TYPO_QUERIES) {
+            assertTrue(index.match(words, null, null, null).count() > 0, words.toString());
+        }
+    }
+
+    // ./mvnw test -Dtest=ProductSearchIndexBenchmarkTest -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void searchesTheFullCatalogInMilliseconds() {
+        List<Document> catalog = catalog(100_000);
+        ProductSearchIndex.Snapshot index = ProductSearchIndex.Snapshot.build(catalog, 0);
+        System.out.printf("Search index: %d products, %d terms, built in %d ms%n",
+                index.getDocuments(), index.getTerms(), index.getBuildMillis());
+
+        // Warm up, then time what a search request does: match plus slicing out the first page
+        for (int i = 0; i < 2_000; i++) {
+            index.match(QUERIES.get(i % QUERIES.size()), null, null, null).page(0, 12);
+        }
+
+        int runs = 5_000;
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            List<String> words = QUERIES.get(i % QUERIES.size());
+            List<String> stores = i % 3 == 0 ? List.of(STORES[i % STORES.length]) : null;
+            long start = System.nanoTime();
+            index.match(words, null, null, stores).page((i % 5) * 12, 12);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+
+        System.out.printf("Search index latency over %d queries: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                runs, nanos[runs / 2] / 1e6, nanos[runs * 99 / 100] / 1e6, nanos[runs - 1] / 1e6);
+
+        // Misspelled and compound words take the trigram and edit distance path
+        for (int i = 0; i < runs; i++) {
+            List<String> words = TYPO_QUERIES.get(i % TYPO_QUERIES.size());
+            long start = System.nanoTime();
+            index.match(words, null, null, null).page(0, 12);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+
+        System.out.printf("Typo-tolerant search latency over %d queries: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                runs, nanos[runs / 2] / 1e6, nanos[runs * 99 / 100] / 1e6, nanos[runs - 1] / 1e6);
+    }
+
+    private List<Document> catalog(int size) {
+        List<Document> catalog = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            catalog.add(new Document("_id", new ObjectId())
+                    .append("name", NAMES[i % NAMES.length] + " " + BRANDS[i % BRANDS.length] + " " + (i % 997))
+                    .append("brand", BRANDS[(i / 3) % BRANDS.length])
+                    .append("category", List.of(new Document("name", CATEGORIES[i % CATEGORIES.length])))
+                    .append("store", new Document("name", STORES[(i / 7) % STORES.length])));
+        }
+        return catalog;
+    }
+
+    private int bruteForce(List<Document> catalog, List<String> words, String brand, List<String> stores) {
+        int count = 0;
+        for (Document document : catalog) {
+            String haystack = SearchText.fold(document.getString("name")) + " "
+                    + SearchText.fold(document.getList("category", Document.class).get(0).getString("name"));
+            boolean matches = true;
+            for (String word : words) {
+                matches &= haystack.contains(SearchText.fold(word));
+            }
+            if (brand != null) {
+                matches &= document.getString("brand").toLowerCase(Locale.ROOT).contains(brand);
+            }
+            if (stores != null) {
+                matches &= stores.contains(document.get("store", Document.class).getString("name"));
+            }
+            count += matches ? 1 : 0;
+        }
+        return count;
+    }
+}
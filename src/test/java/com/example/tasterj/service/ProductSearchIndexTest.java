@@ -0,0 +1,82 @@
+package com.example.tasterj.service;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Typo tolerance and ranking of the in-memory index on a handful of products with string ids "p0", "p1", ...
+class ProductSearchIndexTest {
+
+    private static final ProductSearchIndex.Snapshot INDEX = ProductSearchIndex.Snapshot.build(catalog(
+            "Kyllingfilet 400g",
+            "Kylling filet naturell",
+            "Mjølk 1 liter",
+            "Lettmelk 1%",
+            "Melk",
+            "Fiskesuppe",
+            "Fisk suppe og boller",
+            "Spaghetti"), 0);
+
+    @Test
+    void foldsNorwegianLetters() {
+        assertEquals(List.of("p2"), INDEX.match(List.of("mjolk"), null, null, null).page(0, 10));
+        assertEquals(List.of("p2"), INDEX.match(List.of("mjølk"), null, null, null).page(0, 10));
+    }
+
+    @Test
+    void ranksExactTermsBeforeSubstrings() {
+        assertEquals(List.of("p4", "p3"), INDEX.match(List.of("melk"), null, null, null).page(0, 10));
+    }
+
+    @Test
+    void splitsCompoundsThatOnlyExistWrittenApart() {
+        // "kylling filet" is found inside "kyllingfilet" without any help, ranked after the exact words
+        assertEquals(List.of("p1", "p0"), INDEX.match(List.of("kylling", "filet"), null, null, null).page(0, 10));
+        // "fiskesuppe" is a term itself, so "fiskesupper" is not split but matched within one edit
+        assertTrue(INDEX.match(List.of("fiskesupper"), null, null, null).page(0, 10).contains("p5"));
+        assertEquals(List.of("p6"), INDEX.match(List.of("fisksuppe", "boller"), null, null, null).page(0, 10));
+    }
+
+    @Test
+    void toleratesTyposWithinTheEditBudget() {
+        assertEquals(List.of("p7"), INDEX.match(List.of("spagetti"), null, null, null).page(0, 10));
+        assertEquals(List.of("p7"), INDEX.match(List.of("sapghetti"), null, null, null).page(0, 10));
+        // A prefix with a typo still finds the longer term
+        assertEquals(List.of("p0"), INDEX.match(List.of("kylingfil"), null, null, null).page(0, 10));
+        // Short words are never guessed at
+        assertEquals(0, INDEX.match(List.of("mlk"), null, null, null).count());
+    }
+
+    @Test
+    void leavesOutUnpricedProductsWhenAsked() {
+        List<Document> catalog = catalog("Melk", "Lettmelk");
+        catalog.get(0).append("current_price", 0.5);
+        catalog.get(1).append("current_price", 22.9);
+        ProductSearchIndex.Snapshot index = ProductSearchIndex.Snapshot.build(catalog, 0);
+
+        assertEquals(List.of("p0", "p1"), index.match(List.of("melk"), null, null, null).page(0, 10));
+        assertEquals(List.of("p1"), index.match(List.of("melk"), null, null, null, true).page(0, 10));
+    }
+
+    @Test
+    void cursorsFollowTheRanking() {
+        ProductSearchIndex.Matches matches = INDEX.match(List.of("melk"), null, null, null);
+        List<Object> first = matches.page(0, 1);
+        SearchCursor cursor = SearchCursor.decode(matches.cursorAfter(first.get(0)).encode());
+
+        assertEquals(List.of("p3"), matches.after(cursor, 10));
+    }
+
+    private static List<Document> catalog(String... names) {
+        List<Document> catalog = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            catalog.add(new Document("_id", "p" + i).append("name", names[i]));
+        }
+        return catalog;
+    }
+}
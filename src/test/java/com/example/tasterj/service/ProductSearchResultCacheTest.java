@@ -0,0 +1,78 @@
+package com.example.tasterj.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ProductSearchResultCacheTest {
+
+    private static final byte[] PAGE = "{\"products\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    private final ProductSearchResultCache cache = new ProductSearchResultCache(1 << 20, 100, 1000);
+
+    @Test
+    void storeOrderAndDuplicatesShareAnEntry() {
+        cache.put(key(List.of("Meny", "Kiwi"), 1), "1:1", PAGE);
+
+        assertArrayEquals(PAGE, cache.get(key(List.of("Kiwi", "Meny", "Kiwi"), 1), "1:1"));
+        assertNull(cache.get(key(List.of("Kiwi"), 1), "1:1"));
+        assertNull(cache.get(key(List.of("Meny", "Kiwi"), 2), "1:1"));
+    }
+
+    @Test
+    void noStoresAndAnEmptyStoreListShareAnEntry() {
+        cache.put(key(null, 1), "1:1", PAGE);
+
+        assertArrayEquals(PAGE, cache.get(key(List.of(), 1), "1:1"));
+    }
+
+    @Test
+    void servesOnlyTheVersionAnEntryWasBuiltFrom() {
+        cache.put(key(null, 1), "1:1", PAGE);
+
+        assertNull(cache.get(key(null, 1), "1:mongo"));
+        assertNull(cache.get(key(null, 1), "2:1"));
+    }
+
+    @Test
+    void ingestDropsEveryEntry() {
+        cache.put(key(null, 1), "1:1", PAGE);
+
+        cache.onCatalogUpdated(new ProductCatalogUpdatedEvent(2, Instant.now()));
+
+        assertNull(cache.get(key(null, 1), "1:1"));
+    }
+
+    @Test
+    void reportsHitRatesPerKey() {
+        cache.get(key(null, 1), "1:1");
+        cache.put(key(null, 1), "1:1", PAGE);
+        cache.get(key(null, 1), "1:1");
+        cache.get(key(null, 1), "1:1");
+        cache.get(key(null, 2), "1:1");
+
+        ProductSearchResultCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(2, stats.getMisses());
+
+        ProductSearchResultCache.KeyHits top = stats.getTopKeys().get(0);
+        assertEquals(key(null, 1), top.getKey());
+        assertEquals(2.0 / 3, top.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void leavesLargePagesUncached() {
+        assertFalse(cache.caches(101));
+    }
+
+    private static ProductSearchResultCache.Key key(List<String> stores, int page) {
+        return new ProductSearchResultCache.Key(List.of("tine", "melk"), stores, page, null, 12, true);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.tasterj.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RecipeCursorTest {
+
+    @Test
+    void roundTripsDates() {
+        LocalDateTime savedAt = LocalDateTime.of(2024, 8, 6, 12, 30, 15, 123_000_000);
+        RecipeCursor cursor = RecipeCursor.decode(new RecipeCursor("savedAt", savedAt, "r1").encode(), "savedAt");
+
+        assertEquals(savedAt, cursor.getValue());
+        assertEquals("r1", cursor.getLastId());
+    }
+
+    @Test
+    void roundTripsPrices() {
+        RecipeCursor cursor = RecipeCursor.decode(new RecipeCursor("storedPrice", 129.9, "r2").encode(), "storedPrice");
+
+        assertEquals(129.9, cursor.getValue());
+        assertEquals("r2", cursor.getLastId());
+    }
+
+    @Test
+    void rejectsAnotherSort() {
+        String token = new RecipeCursor("createdAt", LocalDateTime.of(2024, 8, 6, 12, 0), "r1").encode();
+
+        assertThrows(IllegalArgumentException.class, () -> RecipeCursor.decode(token, "savedAt"));
+    }
+
+    @Test
+    void rejectsAValueOfTheWrongType() {
+        // Hand-made tokens naming the right property but carrying the other value type
+        assertThrows(IllegalArgumentException.class, () -> RecipeCursor.decode(token("1|savedAt|d:12.5|r1"), "savedAt"));
+        assertThrows(IllegalArgumentException.class, () -> RecipeCursor.decode(token("1|createdAt|d:12.5|r1"), "createdAt"));
+        assertThrows(IllegalArgumentException.class, () -> RecipeCursor.decode(token("1|storedPrice|t:2024-08-06T12:00|r1"), "storedPrice"));
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertThrows(IllegalArgumentException.class, () -> RecipeCursor.decode("not base64!", "createdAt"));
+        assertThrows(IllegalArgumentException.class, () -> RecipeCursor.decode(token("1|createdAt|t:yesterday|r1"), "createdAt"));
+        assertThrows(IllegalArgumentException.class, () -> RecipeCursor.decode(token("1|createdAt|t:2024-08-06T12:00|"), "createdAt"));
+    }
+
+    private static String token(String decoded) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+    }
+}
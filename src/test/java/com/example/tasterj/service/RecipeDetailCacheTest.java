@@ -0,0 +1,110 @@
+package com.example.tasterj.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecipeDetailCacheTest {
+
+    private final ProductCatalogGeneration catalogGeneration = new ProductCatalogGeneration(event -> {});
+    private final RecipeDetailCache cache = new RecipeDetailCache(catalogGeneration, 1 << 20);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void loadsOncePerRecipeAndVariant() {
+        cache.get("r1", false, () -> load("{\"id\":\"r1\"}"));
+        cache.get("r1", false, () -> load("{\"id\":\"r1\"}"));
+        cache.get("r1", true, () -> load("{\"id\":\"r1\",\"productInfo\":[]}"));
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStats().getHits());
+    }
+
+    @Test
+    void etagIsStrongAndFollowsTheContent() {
+        String etag = cache.get("r1", false, () -> load("{\"id\":\"r1\"}")).getEtag();
+        cache.evict("r1");
+        String sameEtag = cache.get("r1", false, () -> load("{\"id\":\"r1\"}")).getEtag();
+        cache.evict("r1");
+        String changedEtag = cache.get("r1", false, () -> load("{\"id\":\"r1\",\"name\":\"Ny\"}")).getEtag();
+
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        assertEquals(etag, sameEtag);
+        assertNotEquals(etag, changedEtag);
+    }
+
+    @Test
+    void evictDropsBothVariants() {
+        cache.get("r1", false, () -> load("{}"));
+        cache.get("r1", true, () -> load("{}"));
+
+        cache.evict("r1");
+        cache.get("r1", false, () -> load("{}"));
+        cache.get("r1", true, () -> load("{}"));
+
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void loadRacingAnEvictionIsNotCached() {
+        // The load reads the old recipe, then the write commits and evicts before the load is cached
+        cache.get("r1", false, () -> {
+            byte[] json = load("{\"name\":\"Gammel\"}");
+            cache.evict("r1");
+            return json;
+        });
+        RecipeDetailCache.Detail detail = cache.get("r1", false, () -> load("{\"name\":\"Ny\"}"));
+
+        assertEquals(2, loads.get());
+        assertEquals("{\"name\":\"Ny\"}", new String(detail.getJson(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void loadRacingAnEvictionOnAnotherThreadIsNotCached() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch evicted = new CountDownLatch(1);
+        Thread reader = Thread.ofVirtual().start(() -> cache.get("r1", false, () -> {
+            loading.countDown();
+            await(evicted);
+            return load("{\"name\":\"Gammel\"}");
+        }));
+
+        await(loading);
+        cache.evict("r1");
+        evicted.countDown();
+        reader.join();
+
+        cache.get("r1", false, () -> load("{\"name\":\"Ny\"}"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void reloadsInANewCatalogGeneration() {
+        cache.get("r1", false, () -> load("{}"));
+
+        catalogGeneration.advance();
+        cache.get("r1", false, () -> load("{}"));
+
+        assertEquals(2, loads.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] load(String json) {
+        loads.incrementAndGet();
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.model.ProductKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecipePriceRefresherTest {
+
+    private static final ProductKey MILK = new ProductKey("7038010009457", "MENY_NO");
+    private static final ProductKey FLOUR = new ProductKey("7020655860037", "MENY_NO");
+    private static final ProductKey EGGS = new ProductKey("7039610000318", "KIWI");
+
+    @Test
+    void sumsTheIngredientPricesRoundedToOre() {
+        // 0.1 + 0.2 in doubles is 0.30000000000000004
+        Map<ProductKey, Double> prices = Map.of(MILK, 0.1, FLOUR, 0.2);
+
+        assertEquals(0.3, RecipePriceRefresher.currentPrice(List.of(MILK, FLOUR), prices));
+        assertEquals(24.57, RecipePriceRefresher.currentPrice(List.of(MILK), Map.of(MILK, 24.565)));
+    }
+
+    @Test
+    void ingredientListedTwiceCountsTwice() {
+        Map<ProductKey, Double> prices = Map.of(MILK, 21.9, FLOUR, 34.5);
+
+        assertEquals(78.3, RecipePriceRefresher.currentPrice(List.of(MILK, FLOUR, MILK), prices));
+    }
+
+    @Test
+    void productWithoutAPriceCountsAsNothing() {
+        assertEquals(21.9, RecipePriceRefresher.currentPrice(List.of(MILK, EGGS), Map.of(MILK, 21.9)));
+        assertEquals(0.0, RecipePriceRefresher.currentPrice(List.of(), Map.of(MILK, 21.9)));
+    }
+
+    @Test
+    void storedPriceOnlyFollowsChangesOfMoreThanFivePercent() {
+        assertEquals(100.0, RecipePriceRefresher.storedPrice(100.0, 104.0));
+        assertEquals(100.0, RecipePriceRefresher.storedPrice(100.0, 105.0));
+        assertEquals(105.01, RecipePriceRefresher.storedPrice(100.0, 105.01));
+        assertEquals(100.0, RecipePriceRefresher.storedPrice(100.0, 95.0));
+        assertEquals(94.99, RecipePriceRefresher.storedPrice(100.0, 94.99));
+    }
+
+    @Test
+    void zeroStoredPriceTakesTheCurrentPrice() {
+        assertEquals(0.5, RecipePriceRefresher.storedPrice(0.0, 0.5));
+        assertEquals(0.0, RecipePriceRefresher.storedPrice(0.0, 0.0));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.tasterj.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecipeVoteCountReconcilerTest {
+
+    @Test
+    void walksEveryRecipeOnceInIdOrderedChunks() {
+        StandInReconciler reconciler = new StandInReconciler(2, List.of("a", "b", "c", "d", "e"), Set.of("b", "e"));
+
+        RecipeVoteCountReconciler.Stats stats = reconciler.reconcile();
+
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d"), List.of("e")), reconciler.chunks);
+        assertEquals(List.of("", "b", "d", "e"), reconciler.seeks);
+        assertEquals(5, stats.getRecipes());
+        assertEquals(2, stats.getCorrected());
+        assertEquals(3, stats.getChunks());
+        assertEquals(stats, reconciler.getLastRun());
+    }
+
+    @Test
+    void reconcilesNothingWithoutRecipes() {
+        StandInReconciler reconciler = new StandInReconciler(2, List.of(), Set.of());
+
+        RecipeVoteCountReconciler.Stats stats = reconciler.reconcile();
+
+        assertEquals(List.of(), reconciler.chunks);
+        assertEquals(0, stats.getRecipes());
+        assertEquals(0, stats.getChunks());
+    }
+
+    // Serves ids from a sorted list and counts the drifted recipes of each chunk as corrected
+    private static class StandInReconciler extends RecipeVoteCountReconciler {
+
+        private final List<String> recipeIds;
+        private final Set<String> drifted;
+        private final List<String> seeks = new ArrayList<>();
+        private final List<List<String>> chunks = new ArrayList<>();
+
+        private StandInReconciler(int chunkSize, List<String> recipeIds, Set<String> drifted) {
+            super(null, null, null, chunkSize);
+            this.recipeIds = recipeIds;
+            this.drifted = drifted;
+        }
+
+        @Override
+        List<String> findIdsAfter(String afterId, int limit) {
+            seeks.add(afterId);
+            return recipeIds.stream().filter(id -> id.compareTo(afterId) > 0).limit(limit).toList();
+        }
+
+        @Override
+        int recount(List<String> recipeIds) {
+            chunks.add(recipeIds);
+            return (int) recipeIds.stream().filter(drifted::contains).count();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.tasterj.service;
+
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.client.model.Filters;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchCountStrategyTest {
+
+    private static final Bson FILTER = Filters.eq("brand", "Tine");
+
+    private final ProductCatalogGeneration catalogGeneration = new ProductCatalogGeneration(event -> {});
+
+    @Test
+    void cachesExactCountsPerGeneration() {
+        StandInCounts counts = new StandInCounts(42);
+
+        assertEquals(42, counts.count(FILTER).getValue());
+        assertEquals(42, counts.count(Filters.eq("brand", "Tine")).getValue());
+        assertEquals(1, counts.exactCounts);
+
+        catalogGeneration.advance();
+        counts.count(FILTER);
+        assertEquals(2, counts.exactCounts);
+    }
+
+    @Test
+    void estimatesFromTheSampleWhenTheCountTimesOut() {
+        StandInCounts counts = new StandInCounts(-1);
+        counts.sampleMatches = 10;
+
+        SearchCountStrategy.Count count = counts.count(FILTER);
+
+        // 10 of the 1000 sampled, scaled to 50 000 products
+        assertEquals(500, count.getValue());
+        assertTrue(count.isApproximate());
+    }
+
+    @Test
+    void triesTheExactCountAgainAfterAnEstimate() {
+        StandInCounts counts = new StandInCounts(-1);
+        counts.count(FILTER);
+
+        counts.exactValue = 7;
+        SearchCountStrategy.Count count = counts.count(FILTER);
+
+        assertEquals(7, count.getValue());
+        assertFalse(count.isApproximate());
+    }
+
+    @Test
+    void anEstimateIsRaisedToWhatThePageShows() {
+        StandInCounts counts = new StandInCounts(-1);
+
+        // Nothing matched in the sample, but page 3 of 12 was full and has a next page
+        SearchCountStrategy.Count count = counts.count(FILTER).atLeast(24 + 12 + 1);
+
+        assertEquals(37, count.getValue());
+        assertTrue(count.isApproximate());
+        assertEquals(500, new SearchCountStrategy.Count(500, true).atLeast(37).getValue());
+    }
+
+    // Counts without Mongo; an exact value below 0 stands for a count that outruns the time budget
+    private class StandInCounts extends SearchCountStrategy {
+
+        private long exactValue;
+        private long sampleMatches;
+        private int exactCounts;
+
+        private StandInCounts(long exactValue) {
+            super(null, catalogGeneration, 200, 1000, 100);
+            this.exactValue = exactValue;
+        }
+
+        @Override
+        long countExactly(Bson filter) {
+            exactCounts++;
+            if (exactValue < 0) {
+                throw new MongoExecutionTimeoutException(50, "operation exceeded time limit");
+            }
+            return exactValue;
+        }
+
+        @Override
+        long estimatedTotal() {
+            return 50_000;
+        }
+
+        @Override
+        long countInSample(Bson filter) {
+            return sampleMatches;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.tasterj.service;
+
+import com.example.tasterj.model.VoteType;
+import org.junit.jupiter.api.Test;
+
+import static com.example.tasterj.model.VoteType.DOWNVOTE;
+import static com.example.tasterj.model.VoteType.NONE;
+import static com.example.tasterj.model.VoteType.UPVOTE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VoteServiceTest {
+
+    @Test
+    void newVoteAddsToItsCount() {
+        assertDelta(NONE, UPVOTE, 1, 0);
+        assertDelta(NONE, DOWNVOTE, 0, 1);
+    }
+
+    @Test
+    void flipMovesTheVote() {
+        assertDelta(UPVOTE, DOWNVOTE, -1, 1);
+        assertDelta(DOWNVOTE, UPVOTE, 1, -1);
+    }
+
+    @Test
+    void removalTakesTheVoteOff() {
+        assertDelta(UPVOTE, NONE, -1, 0);
+        assertDelta(DOWNVOTE, NONE, 0, -1);
+    }
+
+    @Test
+    void votingTheSameWayAgainChangesNothing() {
+        assertDelta(UPVOTE, UPVOTE, 0, 0);
+        assertDelta(DOWNVOTE, DOWNVOTE, 0, 0);
+        assertDelta(NONE, NONE, 0, 0);
+    }
+
+    private static void assertDelta(VoteType previous, VoteType current, int upvotes, int downvotes) {
+        assertEquals(upvotes, VoteService.delta(previous, current, UPVOTE), previous + " -> " + current + " upvotes");
+        assertEquals(downvotes, VoteService.delta(previous, current, DOWNVOTE), previous + " -> " + current + " downvotes");
+    }
+}